@@ -0,0 +1,20 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.compaction")
+@Data
+public class CompactionConfig {
+    private boolean enabled = true;
+    // Processed messages received longer ago than this are compacted
+    private Duration retention = Duration.ofDays(30);
+    private Integer chunkSize = 500;
+    // Pause between chunks so compaction never holds the table for long
+    private Duration chunkPause = Duration.ofMillis(200);
+    private Integer maxChunksPerRun = 200;
+}
@@ -0,0 +1,19 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.ingestion")
+@Data
+public class IngestionConfig {
+    // A group commit is flushed when it reaches maxBatchSize rows or its first row has waited maxDelay
+    private Integer maxBatchSize = 100;
+    private Duration maxDelay = Duration.ofMillis(5);
+    private Integer queueCapacity = 10000;
+    // last_telegram_update_id is checkpointed every checkpoint-interval-ms and after this many updates
+    private Integer checkpointEveryUpdates = 100;
+}
@@ -0,0 +1,13 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.local-parser")
+@Data
+public class LocalParserConfig {
+    private boolean enabled = true;
+    private Integer maxItemWords = 4;
+}
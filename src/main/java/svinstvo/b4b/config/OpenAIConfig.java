@@ -1,12 +1,21 @@
 package svinstvo.b4b.config;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.WriteTimeoutHandler;
 import lombok.Data;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Configuration
 @ConfigurationProperties(prefix = "openai.api")
@@ -17,14 +26,53 @@ public class OpenAIConfig {
     private String baseUrl;
     private String modelMini;
     private String modelFull;
+    private boolean streamCompletions = false;
+
+    // Dedicated pool so batch and advice traffic reuse warm TLS connections;
+    // metrics(true) publishes reactor.netty.connection.provider.* gauges tagged name=openai
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openAIConnectionProvider(OpenAIHttpConfig httpConfig) {
+        return ConnectionProvider.builder("openai")
+                .maxConnections(httpConfig.getMaxConnections())
+                .pendingAcquireMaxCount(httpConfig.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(httpConfig.getPendingAcquireTimeout())
+                .maxIdleTime(httpConfig.getMaxIdleTime())
+                .maxLifeTime(httpConfig.getMaxLifeTime())
+                .evictInBackground(httpConfig.getEvictionInterval())
+                .metrics(true)
+                .build();
+    }
 
     @Bean
-    public WebClient openAIWebClient() {
+    public WebClient openAIWebClient(ConnectionProvider openAIConnectionProvider, OpenAIHttpConfig httpConfig) {
         log.info("!!!!!!!!!!!!!!!!!!!! OpenAIKey - {}, baseUrl = {}", key, baseUrl);
+
+        HttpClient httpClient = HttpClient.create(openAIConnectionProvider)
+                .compress(httpConfig.isCompress())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) httpConfig.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(httpConfig.getReadTimeout())
+                .doOnConnected(connection -> connection.addHandlerLast(
+                        new WriteTimeoutHandler(httpConfig.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                // Only a handful of fixed paths, so the URI is a safe tag
+                .metrics(true, Function.identity());
+
+        // HTTP/2 is negotiated via ALPN, so it needs TLS; falls back to HTTP/1.1 when the server declines
+        if (httpConfig.isHttp2() && baseUrl != null && baseUrl.startsWith("https")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
+        ExchangeStrategies strategies = ExchangeStrategies.builder()
+                .codecs(codecs -> codecs.defaultCodecs()
+                        .maxInMemorySize((int) httpConfig.getMaxInMemorySize().toBytes()))
+                .build();
+
         return WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .exchangeStrategies(strategies)
                 .defaultHeader("Authorization", "Bearer " + key)
                 .defaultHeader("Content-Type", "application/json")
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "openai.http")
+@Data
+public class OpenAIHttpConfig {
+    private Integer maxConnections = 50;
+    private Integer pendingAcquireMaxCount = 200;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+    // Below the idle cutoff of OpenAI's load balancers, so a pooled connection is never reused after being dropped
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+    private Duration evictionInterval = Duration.ofSeconds(30);
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    // Longest gap between reads; streamed completions send a chunk every few hundred ms
+    private Duration readTimeout = Duration.ofSeconds(60);
+    private Duration writeTimeout = Duration.ofSeconds(10);
+
+    private boolean http2 = true;
+    private boolean compress = true;
+    private DataSize maxInMemorySize = DataSize.ofMegabytes(16);
+}
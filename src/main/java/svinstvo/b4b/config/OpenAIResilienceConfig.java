@@ -0,0 +1,29 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "openai.resilience")
+@Data
+public class OpenAIResilienceConfig {
+    // Per attempt; for streamed completions this covers the wait for response headers
+    private Duration requestTimeout = Duration.ofSeconds(60);
+    private Duration streamIdleTimeout = Duration.ofSeconds(30);
+    private Duration adviceTimeout = Duration.ofSeconds(45);
+
+    private Integer maxRetries = 3;
+    private Duration initialBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    private Double jitter = 0.5;
+
+    // Starting bucket sizes, replaced by the x-ratelimit-limit-* headers once known
+    private Integer requestsPerMinute = 500;
+    private Integer tokensPerMinute = 200000;
+
+    private Integer failureThreshold = 5;
+    private Duration openDuration = Duration.ofSeconds(60);
+}
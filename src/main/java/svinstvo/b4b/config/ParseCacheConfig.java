@@ -0,0 +1,14 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.parse-cache")
+@Data
+public class ParseCacheConfig {
+    private boolean enabled = true;
+    private Long maxSize = 10_000L;
+    private boolean persistent = true;
+}
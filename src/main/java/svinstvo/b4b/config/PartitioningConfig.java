@@ -0,0 +1,15 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.partitioning")
+@Data
+public class PartitioningConfig {
+    // Monthly transactions partitions kept created beyond the current month
+    private Integer premakeMonths = 3;
+    // Partitions older than this many months are detached from transactions; 0 keeps everything
+    private Integer archiveAfterMonths = 0;
+}
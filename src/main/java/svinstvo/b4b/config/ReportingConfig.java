@@ -0,0 +1,24 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "b4b.reporting")
+@Data
+public class ReportingConfig {
+    // Answer table totals on the health probe from planner statistics instead of counting rows
+    private boolean estimateTotals = false;
+
+    // Rendered /stats, /report and /status snapshots; dropped when the chat's data changes
+    private boolean cacheEnabled = true;
+    private Long cacheMaxSize = 10_000L;
+    private Duration cacheTtl = Duration.ofMinutes(10);
+
+    // Advice completions per chat, summary and goal; dropped when the chat gets new transactions
+    private Long adviceCacheMaxSize = 1_000L;
+    private Duration adviceCacheTtl = Duration.ofHours(6);
+}
@@ -3,11 +3,22 @@ package svinstvo.b4b.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
 
 @Configuration
 @ConfigurationProperties(prefix = "b4b.processor")
+@EnableScheduling
 @Data
 public class SchedulerConfig {
     private Integer batchSize = 50;
+    private Integer concurrency = 4;
     private String scheduleCron;
+    private Duration claimTimeout = Duration.ofMinutes(10);
+
+    // Ingestion-driven drains; schedule-cron only sweeps up what these miss
+    private boolean microBatchEnabled = true;
+    private Integer microBatchSize = 20;
+    private Duration microBatchMaxAge = Duration.ofSeconds(5);
 }
\ No newline at end of file
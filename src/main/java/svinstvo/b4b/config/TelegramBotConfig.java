@@ -1,28 +1,57 @@
 package svinstvo.b4b.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import svinstvo.b4b.service.IngestionService;
 import svinstvo.b4b.service.TelegramBotService;
+import svinstvo.b4b.service.TelegramUpdateDispatcher;
 
 @Configuration
 @Slf4j
 public class TelegramBotConfig {
 
-    @Bean
-    public TelegramBotsApi telegramBotsApi(TelegramBotService telegramBotService) {
+    // Built by hand instead of TelegramBotsApi.registerBot so getUpdates can use the dispatcher's
+    // offset and only hand over updates the dispatcher has not seen; restarts resume from the
+    // checkpoint of fully handled updates
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "polling", matchIfMissing = true)
+    public BotSession telegramBotSession(TelegramBotService telegramBotService,
+                                         TelegramUpdateDispatcher updateDispatcher,
+                                         IngestionService ingestionService) {
         try {
             log.info("Initializing Telegram Bot API...");
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(telegramBotService);
+            telegramBotService.onRegister();
+            telegramBotService.clearWebhook();
+            updateDispatcher.resumeFrom(ingestionService.getLastUpdateId());
+
+            DefaultBotOptions options = (DefaultBotOptions) telegramBotService.getOptions();
+            DefaultBotSession session = new DefaultBotSession();
+            session.setToken(telegramBotService.getBotToken());
+            session.setOptions(options);
+            session.setCallback(telegramBotService);
+            session.setUpdatesSupplier(() -> {
+                GetUpdates getUpdates = GetUpdates.builder()
+                        .offset(updateDispatcher.nextOffset())
+                        .limit(options.getGetUpdatesLimit())
+                        .timeout(options.getGetUpdatesTimeout())
+                        .build();
+                getUpdates.setAllowedUpdates(options.getAllowedUpdates());
+                return updateDispatcher.acceptNew(telegramBotService.execute(getUpdates));
+            });
+            session.start();
+
             log.info("✅ Telegram bot registered successfully: {}", telegramBotService.getBotUsername());
-            return botsApi;
+            return session;
         } catch (TelegramApiException e) {
             log.error("❌ Failed to register Telegram bot", e);
             throw new RuntimeException("Could not register Telegram bot", e);
         }
     }
-}
\ No newline at end of file
+}
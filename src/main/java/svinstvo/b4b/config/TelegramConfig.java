@@ -4,12 +4,19 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
-import java.sql.SQLOutput;
-
 @Configuration
 @ConfigurationProperties(prefix = "telegram.bot")
 @Data
 public class TelegramConfig {
     private String username;
     private String token;
+
+    // polling: getUpdates loop on this node; webhook: Telegram POSTs updates to webhookPath
+    private String mode = "polling";
+    // Public base URL registered with setWebhook; leave empty to only expose the endpoint (e.g. local testing)
+    private String webhookUrl;
+    private String webhookPath = "/telegram/webhook";
+    // Sent back by Telegram in X-Telegram-Bot-Api-Secret-Token
+    private String webhookSecret;
+    private Integer webhookMaxConnections = 40;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "telegram.dispatcher")
+@Data
+public class TelegramDispatcherConfig {
+    // Updates waiting per chat before new ones are shed
+    private Integer maxQueuePerChat = 20;
+    private Duration shutdownTimeout = Duration.ofSeconds(30);
+    // Minimum gap between progress edits of a background command's reply (Telegram rate-limits edits)
+    private Duration progressEditInterval = Duration.ofSeconds(2);
+}
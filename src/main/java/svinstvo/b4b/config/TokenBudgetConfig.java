@@ -0,0 +1,21 @@
+package svinstvo.b4b.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "openai.batching")
+@Data
+public class TokenBudgetConfig {
+    private Integer targetInputTokens = 6000;
+    private Integer targetOutputTokens = 2000;
+    private Integer minOutputTokens = 256;
+    private Integer maxOutputTokens = 4096;
+    private Double outputHeadroom = 1.5;
+    private Duration targetLatency = Duration.ofSeconds(20);
+    // Upper bound for a claim sized from the learned messages-per-call estimate
+    private Integer maxClaimSize = 500;
+}
@@ -5,9 +5,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import svinstvo.b4b.config.ReportingConfig;
 import svinstvo.b4b.config.TelegramConfig;
-import svinstvo.b4b.repository.RawTransactionRepository;
-import svinstvo.b4b.repository.TransactionRepository;
+import svinstvo.b4b.repository.StatsRepository;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -18,19 +18,24 @@ import java.util.Map;
 public class BotHealthController {
 
     private final TelegramConfig telegramConfig;
-    private final RawTransactionRepository rawTransactionRepository;
-    private final TransactionRepository transactionRepository;
+    private final ReportingConfig reportingConfig;
+    private final StatsRepository statsRepository;
 
     @GetMapping
     public ResponseEntity<Map<String, Object>> healthCheck() {
         Map<String, Object> health = new HashMap<>();
 
+        StatsRepository.Totals totals = reportingConfig.isEstimateTotals()
+                ? statsRepository.estimatedTotals()
+                : statsRepository.totals();
+
         health.put("status", "UP");
         health.put("bot_username", telegramConfig.getUsername());
-        health.put("raw_transactions", rawTransactionRepository.count());
-        health.put("processed_transactions", transactionRepository.count());
-        health.put("pending_transactions", rawTransactionRepository.countByIsProcessed(false));
+        health.put("raw_transactions", totals.rawCount());
+        health.put("processed_transactions", totals.transactionCount());
+        health.put("pending_transactions", totals.pendingCount());
+        health.put("totals_estimated", totals.estimated());
 
         return ResponseEntity.ok(health);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package svinstvo.b4b.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import svinstvo.b4b.service.TelegramWebhookService;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final TelegramWebhookService telegramWebhookService;
+
+    @PostMapping("${telegram.bot.webhook-path:/telegram/webhook}")
+    public CompletableFuture<ResponseEntity<Void>> receiveUpdate(
+            @RequestHeader(value = SECRET_TOKEN_HEADER, required = false) String secretToken,
+            @RequestBody Update update) {
+        if (!telegramWebhookService.isAuthorized(secretToken)) {
+            log.warn("Rejected webhook update {} with a missing or wrong secret token", update.getUpdateId());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+
+        return telegramWebhookService.receive(update)
+                .thenApply(handled -> ResponseEntity.ok().<Void>build());
+    }
+}
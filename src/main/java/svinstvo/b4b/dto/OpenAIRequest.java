@@ -1,5 +1,6 @@
 package svinstvo.b4b.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -26,6 +27,14 @@ public class OpenAIRequest {
     @JsonProperty("max_tokens")
     private Integer maxTokens;
 
+    @JsonProperty("stream")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stream;
+
+    @JsonProperty("stream_options")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private StreamOptions streamOptions;
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -37,4 +46,13 @@ public class OpenAIRequest {
         @JsonProperty("content")
         private String content;
     }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class StreamOptions {
+        @JsonProperty("include_usage")
+        private Boolean includeUsage;
+    }
 }
\ No newline at end of file
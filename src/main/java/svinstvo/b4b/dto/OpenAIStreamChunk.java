@@ -0,0 +1,49 @@
+package svinstvo.b4b.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OpenAIStreamChunk {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("model")
+    private String model;
+
+    @JsonProperty("choices")
+    private List<Choice> choices;
+
+    // Only present on the final chunk when stream_options.include_usage is set
+    @JsonProperty("usage")
+    private OpenAIResponse.Usage usage;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Choice {
+        @JsonProperty("index")
+        private Integer index;
+
+        @JsonProperty("delta")
+        private Delta delta;
+
+        @JsonProperty("finish_reason")
+        private String finishReason;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Delta {
+        @JsonProperty("role")
+        private String role;
+
+        @JsonProperty("content")
+        private String content;
+    }
+}
@@ -0,0 +1,7 @@
+package svinstvo.b4b.event;
+
+import java.util.Set;
+
+// Published after a group commit stored new raw messages
+public record RawTransactionsIngestedEvent(int count, Set<Long> chatIds) {
+}
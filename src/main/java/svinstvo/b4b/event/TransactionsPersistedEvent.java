@@ -0,0 +1,7 @@
+package svinstvo.b4b.event;
+
+import java.util.Set;
+
+// Published inside the transaction that stored categorized transactions; listen AFTER_COMMIT
+public record TransactionsPersistedEvent(Set<Long> chatIds) {
+}
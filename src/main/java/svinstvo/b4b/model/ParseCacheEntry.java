@@ -0,0 +1,40 @@
+package svinstvo.b4b.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "parse_cache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ParseCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "normalized_text", nullable = false, columnDefinition = "TEXT")
+    private String normalizedText;
+
+    @Column(name = "item_name")
+    private String itemName;
+
+    @Column(name = "amount", precision = 10, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "currency", length = 3)
+    private String currency;
+
+    @Column(name = "category", length = 50)
+    private String category;
+
+    @Column(name = "sentiment_tag", length = 50)
+    private String sentimentTag;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
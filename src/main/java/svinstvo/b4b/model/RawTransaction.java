@@ -38,6 +38,12 @@ public class RawTransaction {
     @Column(name = "error_log", columnDefinition = "TEXT")
     private String errorLog;
 
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "claimed_by", length = 100)
+    private String claimedBy;
+
     @PrePersist
     protected void onCreate() {
         if (receivedAt == null) {
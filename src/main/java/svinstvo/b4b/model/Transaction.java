@@ -14,12 +14,16 @@ import java.time.LocalDateTime;
 public class Transaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_id_seq")
+    @SequenceGenerator(name = "transactions_id_seq", sequenceName = "transactions_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "raw_transaction_id")
     private Long rawTransactionId;
 
+    @Column(name = "telegram_chat_id", nullable = false)
+    private Long telegramChatId;
+
     @Column(name = "item_name")
     private String itemName;
 
@@ -32,7 +36,7 @@ public class Transaction {
     @Column(name = "category", length = 50)
     private String category;
 
-    @Column(name = "transaction_date")
+    @Column(name = "transaction_date", nullable = false)
     private LocalDateTime transactionDate;
 
     @Column(name = "sentiment_tag", length = 50)
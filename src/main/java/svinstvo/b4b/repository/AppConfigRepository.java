@@ -1,9 +1,23 @@
 package svinstvo.b4b.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import svinstvo.b4b.model.AppConfig;
 
 @Repository
 public interface AppConfigRepository extends JpaRepository<AppConfig, String> {
+
+    // Single statement, never moves the stored value backwards
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO app_config (config_key, config_value) VALUES (:key, CAST(:value AS TEXT))
+            ON CONFLICT (config_key) DO UPDATE SET config_value = EXCLUDED.config_value
+            WHERE CAST(app_config.config_value AS INTEGER) < :value
+            """, nativeQuery = true)
+    int advanceIntValue(@Param("key") String key, @Param("value") int value);
 }
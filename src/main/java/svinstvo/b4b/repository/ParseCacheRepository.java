@@ -0,0 +1,26 @@
+package svinstvo.b4b.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import svinstvo.b4b.model.ParseCacheEntry;
+
+import java.math.BigDecimal;
+
+@Repository
+public interface ParseCacheRepository extends JpaRepository<ParseCacheEntry, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO parse_cache (cache_key, normalized_text, item_name, amount, currency, category, sentiment_tag) " +
+            "VALUES (:cacheKey, :normalizedText, :itemName, :amount, :currency, :category, :sentimentTag) " +
+            "ON CONFLICT (cache_key) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("cacheKey") String cacheKey,
+                       @Param("normalizedText") String normalizedText,
+                       @Param("itemName") String itemName,
+                       @Param("amount") BigDecimal amount,
+                       @Param("currency") String currency,
+                       @Param("category") String category,
+                       @Param("sentimentTag") String sentimentTag);
+}
@@ -0,0 +1,47 @@
+package svinstvo.b4b.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// raw_transactions_archive: processed message payloads moved out of raw_transactions (see V9)
+@Repository
+@RequiredArgsConstructor
+public class RawTransactionArchiveRepository {
+
+    // Archive and strip happen in one statement, so a chunk is never half-moved.
+    // Keyset paging on id walks idx_raw_transactions_compactable; SKIP LOCKED leaves rows
+    // the processor is touching for the next run.
+    private static final String COMPACT_CHUNK = """
+            WITH chunk AS (
+                SELECT id, telegram_message_id, telegram_chat_id, message_text, error_log, received_at
+                FROM raw_transactions
+                WHERE is_processed = true AND compacted_at IS NULL AND id > ? AND received_at < ?
+                ORDER BY id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            ), archived AS (
+                INSERT INTO raw_transactions_archive (first_id, last_id, row_count, payload)
+                SELECT MIN(id), MAX(id), COUNT(*), jsonb_agg(to_jsonb(chunk) ORDER BY id)
+                FROM chunk
+                HAVING COUNT(*) > 0
+            )
+            UPDATE raw_transactions r
+            SET message_text = '', error_log = NULL, compacted_at = CURRENT_TIMESTAMP
+            FROM chunk
+            WHERE r.id = chunk.id
+            RETURNING r.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Returns the ids compacted in this chunk; empty once nothing older than the cutoff is left
+    public List<Long> compactChunk(long afterId, LocalDateTime receivedBefore, int limit) {
+        return jdbcTemplate.queryForList(COMPACT_CHUNK, Long.class,
+                afterId, Timestamp.valueOf(receivedBefore), limit);
+    }
+}
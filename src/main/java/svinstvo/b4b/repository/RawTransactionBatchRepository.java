@@ -0,0 +1,46 @@
+package svinstvo.b4b.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Multi-row statements Spring Data can't express
+@Repository
+@RequiredArgsConstructor
+public class RawTransactionBatchRepository {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO raw_transactions (telegram_message_id, telegram_chat_id, message_text, received_at, is_processed) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, false)";
+    private static final String INSERT_SUFFIX =
+            " ON CONFLICT (telegram_message_id) DO NOTHING RETURNING telegram_message_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // One round trip for the whole group; the duplicate check is part of the write.
+    // Returns the telegram_message_ids that were actually inserted.
+    public Set<Integer> insertIgnoringDuplicates(List<RawTransaction> rows) {
+        if (rows.isEmpty()) {
+            return Set.of();
+        }
+
+        String sql = INSERT_PREFIX + String.join(", ", Collections.nCopies(rows.size(), INSERT_ROW)) + INSERT_SUFFIX;
+        List<Object> args = new ArrayList<>(rows.size() * 4);
+        for (RawTransaction row : rows) {
+            args.add(row.getTelegramMessageId());
+            args.add(row.getTelegramChatId());
+            args.add(row.getMessageText());
+            args.add(Timestamp.valueOf(row.getReceivedAt()));
+        }
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, args.toArray()));
+    }
+}
@@ -2,8 +2,11 @@ package svinstvo.b4b.repository;
 
 import svinstvo.b4b.model.RawTransaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,11 +15,58 @@ public interface RawTransactionRepository extends JpaRepository<RawTransaction,
 
     Optional<RawTransaction> findByTelegramMessageId(Integer telegramMessageId);
 
-    @Query("SELECT r FROM RawTransaction r WHERE r.isProcessed = false ORDER BY r.receivedAt ASC")
-    List<RawTransaction> findUnprocessedTransactions();
+    // Claims up to :limit pending rows for this processor; rows locked by a concurrent claim are skipped
+    @Query(value = """
+            UPDATE raw_transactions
+            SET claimed_at = :claimedAt, claimed_by = :claimedBy
+            WHERE id IN (
+                SELECT id FROM raw_transactions
+                WHERE is_processed = false AND claimed_at IS NULL
+                ORDER BY received_at ASC
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """, nativeQuery = true)
+    List<RawTransaction> claimUnprocessedBatch(@Param("limit") int limit,
+                                               @Param("claimedAt") LocalDateTime claimedAt,
+                                               @Param("claimedBy") String claimedBy);
 
-    @Query(value = "SELECT r FROM RawTransaction r WHERE r.isProcessed = false ORDER BY r.receivedAt ASC LIMIT :limit")
-    List<RawTransaction> findUnprocessedTransactionsWithLimit(int limit);
+    @Modifying
+    @Query("UPDATE RawTransaction r SET r.claimedAt = null, r.claimedBy = null " +
+            "WHERE r.isProcessed = false AND r.claimedAt < :claimedBefore")
+    int releaseExpiredClaims(@Param("claimedBefore") LocalDateTime claimedBefore);
 
-    Long countByIsProcessed(Boolean isProcessed);
+    // Writes below only touch rows still claimed by :owner; a claim that expired and was taken by
+    // another processor belongs to that processor now
+    @Modifying
+    @Query(value = """
+            UPDATE raw_transactions SET claimed_at = NULL, claimed_by = NULL
+            WHERE id = ANY(:ids) AND claimed_by = :owner AND is_processed = false
+            """, nativeQuery = true)
+    int releaseClaims(@Param("ids") Long[] ids, @Param("owner") String owner);
+
+    // Returns the ids this call flagged, so results are only persisted for rows the caller still owned
+    @Query(value = """
+            UPDATE raw_transactions SET is_processed = true, error_log = NULL
+            WHERE id = ANY(:ids) AND claimed_by = :owner AND is_processed = false
+            RETURNING id
+            """, nativeQuery = true)
+    List<Long> markProcessed(@Param("ids") Long[] ids, @Param("owner") String owner);
+
+    @Modifying
+    @Query(value = """
+            UPDATE raw_transactions SET error_log = :errorLog
+            WHERE id = ANY(:ids) AND claimed_by = :owner AND is_processed = false
+            """, nativeQuery = true)
+    int markFailed(@Param("ids") Long[] ids, @Param("owner") String owner, @Param("errorLog") String errorLog);
+
+    // Literal predicate so the partial idx_raw_transactions_pending applies; a bound
+    // parameter would leave generic plans on the full table
+    @Query(value = "SELECT COUNT(*) FROM raw_transactions WHERE is_processed = false", nativeQuery = true)
+    long countPending();
+
+    @Query(value = "SELECT COUNT(*) FROM raw_transactions WHERE is_processed = false AND telegram_chat_id = :chatId",
+            nativeQuery = true)
+    long countPendingByChat(@Param("chatId") long chatId);
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package svinstvo.b4b.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+// spending_daily_rollup: one row per (chat, day, category). Runs on the caller's transaction.
+@Repository
+@RequiredArgsConstructor
+public class SpendingRollupRepository {
+
+    public record Delta(LocalDate day, long chatId, String category, BigDecimal amount, long count) {
+    }
+
+    private static final String UPSERT_PREFIX =
+            "INSERT INTO spending_daily_rollup (day, telegram_chat_id, category, total_amount, transaction_count) VALUES ";
+    private static final String UPSERT_ROW = "(?, ?, ?, ?, ?)";
+    private static final String UPSERT_SUFFIX = """
+             ON CONFLICT (telegram_chat_id, day, category) DO UPDATE SET
+                total_amount = spending_daily_rollup.total_amount + EXCLUDED.total_amount,
+                transaction_count = spending_daily_rollup.transaction_count + EXCLUDED.transaction_count
+            """;
+
+    // Days before this (app_config, ISO date) belong to detached transactions partitions; their
+    // rollup rows are the only record left and rebuild() keeps them as they are
+    private static final String FROZEN_BEFORE_KEY = "rollup_frozen_before";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Deltas must have distinct keys; callers sort them so concurrent batches lock rows in the same order
+    public void addAll(List<Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        String sql = UPSERT_PREFIX + String.join(", ", Collections.nCopies(deltas.size(), UPSERT_ROW)) + UPSERT_SUFFIX;
+        List<Object> args = new ArrayList<>(deltas.size() * 5);
+        for (Delta delta : deltas) {
+            args.add(Date.valueOf(delta.day()));
+            args.add(delta.chatId());
+            args.add(delta.category());
+            args.add(delta.amount());
+            args.add(delta.count());
+        }
+        jdbcTemplate.update(sql, args.toArray());
+    }
+
+    // Recomputes the days still backed by transactions; the table lock holds back concurrent addAll()
+    // until the rebuild commits, so no increment is lost or counted twice
+    public int rebuild() {
+        jdbcTemplate.execute("LOCK TABLE spending_daily_rollup IN EXCLUSIVE MODE");
+        LocalDate from = findFrozenBefore().orElse(LocalDate.EPOCH);
+        jdbcTemplate.update("DELETE FROM spending_daily_rollup WHERE day >= ?", Date.valueOf(from));
+        return jdbcTemplate.update("""
+                INSERT INTO spending_daily_rollup (day, telegram_chat_id, category, total_amount, transaction_count)
+                SELECT CAST(transaction_date AS DATE), telegram_chat_id, COALESCE(category, 'Other'),
+                       COALESCE(SUM(amount), 0), COUNT(*)
+                FROM transactions
+                WHERE transaction_date >= ?
+                GROUP BY 1, 2, 3
+                """, Timestamp.valueOf(from.atStartOfDay()));
+    }
+
+    // Called before partitions are detached; never moves the bound backwards
+    public void freezeBefore(LocalDate day) {
+        jdbcTemplate.update("""
+                INSERT INTO app_config (config_key, config_value) VALUES (?, ?)
+                ON CONFLICT (config_key) DO UPDATE SET config_value = EXCLUDED.config_value
+                WHERE app_config.config_value < EXCLUDED.config_value
+                """, FROZEN_BEFORE_KEY, day.toString());
+    }
+
+    public Optional<LocalDate> findFrozenBefore() {
+        return jdbcTemplate.queryForList("SELECT config_value FROM app_config WHERE config_key = ?",
+                        String.class, FROZEN_BEFORE_KEY)
+                .stream()
+                .findFirst()
+                .map(LocalDate::parse);
+    }
+
+    // [category, total], highest total first
+    public List<Object[]> findTopCategoriesSince(long chatId, LocalDate fromDay) {
+        return jdbcTemplate.query("""
+                        SELECT category, SUM(total_amount) AS total FROM spending_daily_rollup
+                        WHERE telegram_chat_id = ? AND day >= ?
+                        GROUP BY category ORDER BY total DESC
+                        """,
+                (rs, rowNum) -> new Object[]{rs.getString("category"), rs.getBigDecimal("total")},
+                chatId, Date.valueOf(fromDay));
+    }
+}
@@ -0,0 +1,82 @@
+package svinstvo.b4b.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+
+// One round trip per stats/status/health request: every figure comes from a single aggregate statement
+@Repository
+@RequiredArgsConstructor
+public class StatsRepository {
+
+    public record ChatStats(BigDecimal totalSpent, long transactionCount, long pendingCount) {
+    }
+
+    public record ChatStatus(long transactionCount, long rawCount, long processedCount, long pendingCount) {
+    }
+
+    public record Totals(long rawCount, long transactionCount, long pendingCount, boolean estimated) {
+    }
+
+    // reltuples is -1 until the first ANALYZE; partitions are summed so a partitioned parent still counts
+    private static final String ESTIMATE = """
+            (SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_class c
+             WHERE c.oid = '%1$s'::regclass
+                OR c.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = '%1$s'::regclass))
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatStats chatStatsSince(long chatId, LocalDate fromDay) {
+        return jdbcTemplate.queryForObject("""
+                        SELECT COALESCE(SUM(r.total_amount), 0) AS total_spent,
+                               COALESCE(SUM(r.transaction_count), 0) AS transaction_count,
+                               (SELECT COUNT(*) FROM raw_transactions
+                                WHERE telegram_chat_id = ? AND is_processed = false) AS pending_count
+                        FROM spending_daily_rollup r
+                        WHERE r.telegram_chat_id = ? AND r.day >= ?
+                        """,
+                (rs, rowNum) -> new ChatStats(rs.getBigDecimal("total_spent"),
+                        rs.getLong("transaction_count"), rs.getLong("pending_count")),
+                chatId, chatId, Date.valueOf(fromDay));
+    }
+
+    public ChatStatus chatStatus(long chatId) {
+        return jdbcTemplate.queryForObject("""
+                        SELECT (SELECT COUNT(*) FROM transactions WHERE telegram_chat_id = ?) AS transaction_count,
+                               COUNT(*) AS raw_count,
+                               COUNT(*) FILTER (WHERE is_processed = true) AS processed_count,
+                               COUNT(*) FILTER (WHERE is_processed = false) AS pending_count
+                        FROM raw_transactions
+                        WHERE telegram_chat_id = ?
+                        """,
+                (rs, rowNum) -> new ChatStatus(rs.getLong("transaction_count"), rs.getLong("raw_count"),
+                        rs.getLong("processed_count"), rs.getLong("pending_count")),
+                chatId, chatId);
+    }
+
+    public Totals totals() {
+        return jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*) AS raw_count,
+                               COUNT(*) FILTER (WHERE is_processed = false) AS pending_count,
+                               (SELECT COUNT(*) FROM transactions) AS transaction_count
+                        FROM raw_transactions
+                        """,
+                (rs, rowNum) -> new Totals(rs.getLong("raw_count"), rs.getLong("transaction_count"),
+                        rs.getLong("pending_count"), false));
+    }
+
+    // Totals from planner statistics; only the pending count is exact, as it drives processing
+    public Totals estimatedTotals() {
+        return jdbcTemplate.queryForObject(
+                "SELECT " + ESTIMATE.formatted("raw_transactions") + " AS raw_count, "
+                        + ESTIMATE.formatted("transactions") + " AS transaction_count, "
+                        + "(SELECT COUNT(*) FROM raw_transactions WHERE is_processed = false) AS pending_count",
+                (rs, rowNum) -> new Totals(rs.getLong("raw_count"), rs.getLong("transaction_count"),
+                        rs.getLong("pending_count"), true));
+    }
+}
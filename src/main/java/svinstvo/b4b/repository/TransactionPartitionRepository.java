@@ -0,0 +1,56 @@
+package svinstvo.b4b.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Monthly partitions of transactions, named transactions_pYYYYMM (see V8)
+@Repository
+@RequiredArgsConstructor
+public class TransactionPartitionRepository {
+
+    private static final String PREFIX = "transactions_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Pattern NAME = Pattern.compile(PREFIX + "(\\d{6})");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findAttachedPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'transactions'::regclass
+                ORDER BY c.relname
+                """, String.class);
+    }
+
+    // Fails if the default partition already holds rows for the month
+    public void createMonth(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF transactions FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+    }
+
+    // The detached table keeps its rows and name; dropping or dumping it is left to the operator
+    public void detach(String partitionName) {
+        jdbcTemplate.execute("ALTER TABLE transactions DETACH PARTITION " + partitionName);
+    }
+
+    public static String partitionName(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    // Empty for partitions outside the naming scheme, such as transactions_default
+    public static Optional<YearMonth> monthOf(String partitionName) {
+        Matcher matcher = NAME.matcher(partitionName);
+        return matcher.matches()
+                ? Optional.of(YearMonth.parse(matcher.group(1), SUFFIX))
+                : Optional.empty();
+    }
+}
@@ -0,0 +1,59 @@
+package svinstvo.b4b.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import svinstvo.b4b.config.ReportingConfig;
+import svinstvo.b4b.event.TransactionsPersistedEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+// Single-flight cache of advice completions. Requests for the same chat, summary and goal share
+// one in-flight call and then its answer; failed calls are not kept, so the next request retries.
+@Service
+public class AdviceCacheService {
+
+    private record AdviceKey(long chatId, String hash) {
+    }
+
+    private final OpenAIService openAIService;
+    private final AsyncCache<AdviceKey, String> advice;
+    private final Counter completions;
+
+    public AdviceCacheService(OpenAIService openAIService,
+                              ReportingConfig reportingConfig,
+                              MeterRegistry meterRegistry) {
+        this.openAIService = openAIService;
+        this.advice = Caffeine.newBuilder()
+                .maximumSize(reportingConfig.getAdviceCacheMaxSize())
+                .expireAfterWrite(reportingConfig.getAdviceCacheTtl())
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, advice, "advice-cache");
+        this.completions = meterRegistry.counter("b4b.advice.completions");
+    }
+
+    public CompletableFuture<String> get(long chatId, String spendingSummary, double savingsGoal) {
+        AdviceKey key = new AdviceKey(chatId, hash(spendingSummary, savingsGoal));
+        return advice.get(key, (k, executor) -> {
+            completions.increment();
+            return openAIService.generateFinancialAdvice(spendingSummary, savingsGoal).toFuture();
+        });
+    }
+
+    // The summary hash already changes with the numbers; this just frees superseded entries
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPersisted(TransactionsPersistedEvent event) {
+        advice.synchronous().asMap().keySet().removeIf(key -> event.chatIds().contains(key.chatId()));
+    }
+
+    private String hash(String spendingSummary, double savingsGoal) {
+        return CacheKeys.sha256(openAIService.getAdviceSignature(), String.valueOf(savingsGoal), spendingSummary);
+    }
+}
@@ -0,0 +1,187 @@
+package svinstvo.b4b.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.event.TransactionsPersistedEvent;
+import svinstvo.b4b.model.RawTransaction;
+import svinstvo.b4b.model.Transaction;
+import svinstvo.b4b.repository.RawTransactionRepository;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+import svinstvo.b4b.repository.TransactionRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BatchPersistenceService {
+
+    private final RawTransactionRepository rawTransactionRepository;
+    private final TransactionRepository transactionRepository;
+    private final SpendingRollupRepository spendingRollupRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    static final String NO_RESULT_ERROR = "No parse result returned for this message";
+
+    @Transactional
+    public List<RawTransaction> claimBatch(int limit, String owner) {
+        List<RawTransaction> claimed = rawTransactionRepository.claimUnprocessedBatch(
+                limit, LocalDateTime.now(), owner);
+
+        log.debug("Claimed {} raw transactions as {}", claimed.size(), owner);
+        return claimed;
+    }
+
+    // Raw rows are flagged first with one UPDATE ... WHERE id = ANY(?) that only matches rows this
+    // owner still holds; transactions and rollup deltas are built for the ids it returns, so a row
+    // whose claim expired and was reprocessed elsewhere is never counted twice.
+    // Inserts are JDBC-batched (pooled sequence ids + hibernate.jdbc.batch_size).
+    @Transactional
+    public List<Transaction> saveParsedBatch(List<RawTransaction> batch, Map<Long, ParsedTransaction> resultsById,
+                                             String owner) {
+        List<Long> parsedIds = new ArrayList<>();
+        List<Long> unmatchedIds = new ArrayList<>();
+
+        for (RawTransaction rawTx : batch) {
+            if (resultsById.containsKey(rawTx.getId())) {
+                parsedIds.add(rawTx.getId());
+            } else {
+                unmatchedIds.add(rawTx.getId());
+            }
+        }
+
+        Set<Long> owned = parsedIds.isEmpty()
+                ? Set.of()
+                : new HashSet<>(rawTransactionRepository.markProcessed(parsedIds.toArray(Long[]::new), owner));
+        if (owned.size() < parsedIds.size()) {
+            log.warn("Dropping results for {} raw transactions no longer claimed by {}",
+                    parsedIds.size() - owned.size(), owner);
+        }
+
+        List<Transaction> transactions = batch.stream()
+                .filter(rawTx -> owned.contains(rawTx.getId()))
+                .map(rawTx -> toTransaction(rawTx, resultsById.get(rawTx.getId())))
+                .toList();
+
+        transactionRepository.saveAll(transactions);
+        transactionRepository.flush();
+        addToRollup(transactions);
+
+        // Rows the model skipped are retried once their claim expires
+        if (!unmatchedIds.isEmpty()) {
+            log.warn("No parse result for raw transaction IDs: {}", unmatchedIds);
+            rawTransactionRepository.markFailed(unmatchedIds.toArray(Long[]::new), owner, NO_RESULT_ERROR);
+        }
+
+        return transactions;
+    }
+
+    @Transactional
+    public boolean saveParsedTransaction(RawTransaction rawTx, ParsedTransaction parsed, String owner) {
+        if (rawTransactionRepository.markProcessed(new Long[]{rawTx.getId()}, owner).isEmpty()) {
+            log.warn("Raw transaction {} is no longer claimed by {}, dropping its result", rawTx.getId(), owner);
+            return false;
+        }
+        Transaction transaction = transactionRepository.save(toTransaction(rawTx, parsed));
+        addToRollup(List.of(transaction));
+
+        log.debug("Successfully processed transaction ID: {} - {}", rawTx.getId(), parsed.getItemName());
+        return true;
+    }
+
+    // Failed rows keep their claim so a drain does not pick them straight back up;
+    // requeueExpiredClaims() makes them eligible again after the claim timeout
+    @Transactional
+    public void markBatchFailed(Collection<RawTransaction> batch, String errorMessage, String owner) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        rawTransactionRepository.markFailed(ids(batch), owner, errorMessage);
+    }
+
+    // Hands rows back untouched (no error_log) when the failure was not theirs, e.g. OpenAI being down
+    @Transactional
+    public void releaseClaims(Collection<RawTransaction> batch, String owner) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        rawTransactionRepository.releaseClaims(ids(batch), owner);
+    }
+
+    @Transactional
+    public int requeueExpiredClaims(LocalDateTime claimedBefore) {
+        return rawTransactionRepository.releaseExpiredClaims(claimedBefore);
+    }
+
+    // Same transaction as the inserts, so reports never see one without the other;
+    // the event reaches listeners only once that transaction commits
+    private void addToRollup(List<Transaction> transactions) {
+        // Sorted keys: concurrent batches touching the same rollup rows lock them in the same order
+        Map<RollupKey, SpendingRollupRepository.Delta> deltas = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            RollupKey key = new RollupKey(
+                    transaction.getTelegramChatId(),
+                    transaction.getTransactionDate().toLocalDate(),
+                    transaction.getCategory() != null ? transaction.getCategory() : "Other");
+            BigDecimal amount = transaction.getAmount() != null ? transaction.getAmount() : BigDecimal.ZERO;
+
+            deltas.merge(key,
+                    new SpendingRollupRepository.Delta(key.day(), key.chatId(), key.category(), amount, 1),
+                    (a, b) -> new SpendingRollupRepository.Delta(a.day(), a.chatId(), a.category(),
+                            a.amount().add(b.amount()), a.count() + b.count()));
+        }
+        spendingRollupRepository.addAll(List.copyOf(deltas.values()));
+
+        if (!transactions.isEmpty()) {
+            eventPublisher.publishEvent(new TransactionsPersistedEvent(transactions.stream()
+                    .map(Transaction::getTelegramChatId)
+                    .collect(Collectors.toSet())));
+        }
+    }
+
+    // Same order as the table's primary key
+    private record RollupKey(long chatId, LocalDate day, String category) implements Comparable<RollupKey> {
+
+        private static final Comparator<RollupKey> ORDER = Comparator.comparingLong(RollupKey::chatId)
+                .thenComparing(RollupKey::day)
+                .thenComparing(RollupKey::category);
+
+        @Override
+        public int compareTo(RollupKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private Long[] ids(Collection<RawTransaction> batch) {
+        return batch.stream()
+                .map(RawTransaction::getId)
+                .toArray(Long[]::new);
+    }
+
+    private Transaction toTransaction(RawTransaction rawTx, ParsedTransaction parsed) {
+        return Transaction.builder()
+                .rawTransactionId(rawTx.getId())
+                .telegramChatId(rawTx.getTelegramChatId())
+                .itemName(parsed.getItemName())
+                .amount(parsed.getAmount())
+                .currency(parsed.getCurrency() != null ? parsed.getCurrency() : "CZK")
+                .category(parsed.getCategory())
+                .sentimentTag(parsed.getSentimentTag())
+                .build();
+    }
+}
@@ -1,19 +1,35 @@
 package svinstvo.b4b.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import svinstvo.b4b.config.OpenAIConfig;
 import svinstvo.b4b.config.SchedulerConfig;
 import svinstvo.b4b.dto.ParsedTransaction;
 import svinstvo.b4b.model.RawTransaction;
 import svinstvo.b4b.model.Transaction;
 import svinstvo.b4b.repository.RawTransactionRepository;
-import svinstvo.b4b.repository.TransactionRepository;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,139 +37,384 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class BatchProcessorService {
 
+    public interface ProgressListener {
+        ProgressListener NONE = (chatId, processed) -> {
+        };
+
+        // processed is how many of the chat's rows this drain has saved so far.
+        // Called from reactor threads as batches finish; must not block
+        void onProgress(long chatId, int processed);
+    }
+
+    // released rows went back to the queue because OpenAI was unavailable; remaining is what is
+    // still unprocessed after the drain, including messages that arrived while it ran
+    public record DrainResult(int processed, int released, long remaining, boolean circuitOpen,
+                              Map<Long, Integer> processedByChat) {
+
+        public int processedFor(long chatId) {
+            return processedByChat.getOrDefault(chatId, 0);
+        }
+    }
+
+    private static final int PERSIST_GROUP_SIZE = 10;
+    private static final Duration PERSIST_GROUP_WINDOW = Duration.ofMillis(500);
+
     private final RawTransactionRepository rawTransactionRepository;
-    private final TransactionRepository transactionRepository;
+    private final BatchPersistenceService batchPersistenceService;
     private final OpenAIService openAIService;
+    private final OpenAICircuitBreaker openAICircuitBreaker;
+    private final LocalExpenseParser localExpenseParser;
+    private final ParseCacheService parseCacheService;
+    private final TokenBudgetEstimator tokenBudgetEstimator;
     private final SchedulerConfig schedulerConfig;
+    private final OpenAIConfig openAIConfig;
+    private final MeterRegistry meterRegistry;
+
+    // Identifies this node in raw_transactions.claimed_by
+    private final String claimOwner = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final Object drainLock = new Object();
+    // Guarded by drainLock
+    private Drain runningDrain;
+    private Drain queuedDrain;
 
-    @Scheduled(cron = "${budgetbot.processor.schedule-cron}")
+    @Scheduled(cron = "${b4b.processor.schedule-cron}")
     public void scheduledProcessing() {
         log.debug("Scheduled batch processing triggered");
         processPendingTransactions();
     }
 
-    @Transactional
-    public void processPendingTransactions() {
-        Long pendingCount = rawTransactionRepository.countByIsProcessed(false);
+    @Scheduled(fixedDelayString = "${b4b.processor.claim-sweep-interval-ms:60000}")
+    public void requeueExpiredClaims() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(schedulerConfig.getClaimTimeout());
+        int requeued = batchPersistenceService.requeueExpiredClaims(cutoff);
 
-        if (pendingCount == 0) {
-            log.debug("No pending transactions to process");
-            return;
+        if (requeued > 0) {
+            log.info("Requeued {} raw transactions with claims older than {}", requeued, cutoff);
         }
+    }
+
+    public DrainResult processPendingTransactions() {
+        return processPendingTransactions(ProgressListener.NONE);
+    }
 
-        log.info("Found {} pending transactions. Starting batch processing...", pendingCount);
+    // Single-flight per node: the cron, micro-batch trigger and /sync share one pipeline, so OpenAI
+    // calls in flight never exceed concurrency. A caller arriving while a drain runs joins the one
+    // follow-up drain queued behind it, which starts when the running one finishes and picks up
+    // whatever arrived meanwhile.
+    public DrainResult processPendingTransactions(ProgressListener progressListener) {
+        Drain drain;
+        synchronized (drainLock) {
+            if (runningDrain == null) {
+                runningDrain = new Drain();
+                runningDrain.turn.complete(null);
+                drain = runningDrain;
+            } else {
+                if (queuedDrain == null) {
+                    queuedDrain = new Drain();
+                }
+                drain = queuedDrain;
+            }
+            drain.listeners.add(progressListener);
+        }
 
-        // Fetch batch
-        List<RawTransaction> pendingTransactions = fetchPendingBatch();
+        drain.turn.join();
+        if (drain.started.compareAndSet(false, true)) {
+            run(drain);
+        }
 
-        if (pendingTransactions.isEmpty()) {
-            return;
+        try {
+            return drain.result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
+    }
 
+    private void run(Drain drain) {
         try {
-            // Parse with OpenAI
-            List<ParsedTransaction> parsedTransactions = openAIService.parseTransactions(pendingTransactions);
+            drain.result.complete(drainOnce(drain));
+        } catch (RuntimeException e) {
+            drain.result.completeExceptionally(e);
+        } finally {
+            Drain next;
+            synchronized (drainLock) {
+                runningDrain = queuedDrain;
+                queuedDrain = null;
+                next = runningDrain;
+            }
+            if (next != null) {
+                next.turn.complete(null);
+            }
+        }
+    }
 
-            // Create lookup map for matching
-            Map<Long, RawTransaction> rawTransactionMap = pendingTransactions.stream()
-                    .collect(Collectors.toMap(RawTransaction::getId, rt -> rt));
+    // Not transactional: claim and persist run in their own short transactions,
+    // so no connection is held during the OpenAI round trips
+    private DrainResult drainOnce(Drain drain) {
+        long pendingCount = rawTransactionRepository.countPending();
 
-            // Save parsed transactions
-            for (ParsedTransaction parsed : parsedTransactions) {
-                try {
-                    RawTransaction rawTx = rawTransactionMap.get(parsed.getId());
+        if (!openAICircuitBreaker.isCallPermitted()) {
+            log.info("OpenAI circuit is open, pausing batch processing with {} pending", pendingCount);
+            return new DrainResult(0, 0, pendingCount, true, Map.of());
+        }
 
-                    if (rawTx == null) {
-                        log.warn("Could not find raw transaction with ID: {}", parsed.getId());
-                        continue;
-                    }
+        if (pendingCount == 0) {
+            log.debug("No pending transactions to process");
+            return new DrainResult(0, 0, 0, false, Map.of());
+        }
 
-                    // Create and save normalized transaction
-                    Transaction transaction = Transaction.builder()
-                            .rawTransactionId(rawTx.getId())
-                            .itemName(parsed.getItemName())
-                            .amount(parsed.getAmount())
-                            .currency(parsed.getCurrency() != null ? parsed.getCurrency() : "CZK")
-                            .category(parsed.getCategory())
-                            .sentimentTag(parsed.getSentimentTag())
-                            .build();
-
-                    transactionRepository.save(transaction);
-
-                    // Mark as processed
-                    rawTx.setIsProcessed(true);
-                    rawTransactionRepository.save(rawTx);
-
-                    log.debug("Successfully processed transaction ID: {} - {}", rawTx.getId(), parsed.getItemName());
-
-                } catch (Exception e) {
-                    log.error("Error saving transaction ID: {}", parsed.getId(), e);
-                    RawTransaction rawTx = rawTransactionMap.get(parsed.getId());
-                    if (rawTx != null) {
-                        rawTx.setErrorLog("Error during save: " + e.getMessage());
-                        rawTransactionRepository.save(rawTx);
-                    }
-                }
-            }
+        // Claims grow to what one OpenAI call is expected to hold, so runs of short messages
+        // are packed together instead of being capped at batch-size
+        int batchSize = tokenBudgetEstimator.claimSize(schedulerConfig.getBatchSize());
+        int concurrency = schedulerConfig.getConcurrency();
+        long maxBatches = (pendingCount + batchSize - 1) / batchSize;
+
+        log.info("Found {} pending transactions. Draining up to {} batches, {} at a time...",
+                pendingCount, maxBatches, concurrency);
+        // Each claimed batch is resolved locally first; the remainder is packed into token-budgeted
+        // OpenAI calls. flatMap caps calls in flight and only pulls a new claim once earlier work drains.
+        // An empty claim ends the drain, which is also how an opening circuit stops it
+        Integer processed = Mono.fromCallable(() -> openAICircuitBreaker.isCallPermitted()
+                        ? batchPersistenceService.claimBatch(batchSize, claimOwner)
+                        : List.<RawTransaction>of())
+                .subscribeOn(Schedulers.boundedElastic())
+                .repeat()
+                .takeWhile(batch -> !batch.isEmpty())
+                .take(maxBatches)
+                .concatMap(batch -> Mono.fromCallable(() -> resolveWithoutOpenAI(batch, drain))
+                        .subscribeOn(Schedulers.boundedElastic()), 1)
+                .concatMapIterable(localPass -> planWork(localPass, drain), 1)
+                .flatMap(work -> work, concurrency)
+                .reduce(0, Integer::sum)
+                .block();
+
+        DrainResult result = new DrainResult(processed != null ? processed : 0, drain.released.get(),
+                rawTransactionRepository.countPending(), !openAICircuitBreaker.isCallPermitted(),
+                drain.processedByChat());
+        log.info("Processed {} transactions, released {}, {} still pending", result.processed(),
+                result.released(), result.remaining());
+        return result;
+    }
 
-            log.info("Successfully processed {} transactions", parsedTransactions.size());
+    // One chat's backlog, so /sync never reports other chats' volume
+    public long countPending(long chatId) {
+        return rawTransactionRepository.countPendingByChat(chatId);
+    }
 
-        } catch (Exception e) {
-            log.error("Error during batch processing", e);
+    private List<Mono<Integer>> planWork(LocalPass localPass, Drain drain) {
+        List<Mono<Integer>> work = new ArrayList<>();
+        work.add(Mono.just(localPass.saved()));
 
-            // Mark all as error
-            for (RawTransaction rawTx : pendingTransactions) {
-                rawTx.setErrorLog("Batch processing failed: " + e.getMessage());
-                rawTransactionRepository.save(rawTx);
-            }
+        for (List<RawTransaction> chunk : tokenBudgetEstimator.pack(localPass.remaining())) {
+            work.add(Mono.defer(() -> dispatchToOpenAI(chunk, drain)));
         }
+        return work;
     }
 
-    private List<RawTransaction> fetchPendingBatch() {
-        int batchSize = schedulerConfig.getBatchSize();
+    // Fast paths: simple expenses are parsed in-process and repeated texts come from the
+    // parse cache, so only the remainder reaches OpenAI
+    private LocalPass resolveWithoutOpenAI(List<RawTransaction> batch, Drain drain) {
+        Map<Long, ParsedTransaction> resolved = new LinkedHashMap<>();
+        List<RawTransaction> unresolved = new ArrayList<>();
 
-        // Note: Native query approach for LIMIT support
-        return rawTransactionRepository.findUnprocessedTransactions()
-                .stream()
-                .limit(batchSize)
+        for (RawTransaction rawTx : batch) {
+            localExpenseParser.parse(rawTx).ifPresentOrElse(
+                    parsed -> resolved.put(rawTx.getId(), parsed),
+                    () -> unresolved.add(rawTx));
+        }
+
+        try {
+            resolved.putAll(parseCacheService.lookup(unresolved));
+        } catch (Exception e) {
+            log.warn("Parse cache lookup failed, sending {} transactions to OpenAI", unresolved.size(), e);
+        }
+
+        List<RawTransaction> matched = batch.stream()
+                .filter(rawTx -> resolved.containsKey(rawTx.getId()))
                 .toList();
+        List<RawTransaction> remaining = batch.stream()
+                .filter(rawTx -> !resolved.containsKey(rawTx.getId()))
+                .toList();
+
+        int saved = matched.isEmpty() ? 0 : persistResults(matched, resolved, drain);
+        if (saved > 0) {
+            log.info("Resolved {} of {} transactions without OpenAI", saved, batch.size());
+        }
+        return new LocalPass(saved, remaining);
+    }
+
+    // Rows the model dropped or garbled are retried in halves until the bad message is isolated,
+    // so one poisonous text costs log2(n) small calls instead of a full batch every tick
+    private Mono<Integer> dispatchToOpenAI(List<RawTransaction> batch, Drain drain) {
+        return attempt(batch, drain).flatMap(result -> {
+            List<RawTransaction> leftover = result.leftover();
+            if (leftover.isEmpty()) {
+                return Mono.just(result.saved());
+            }
+
+            // Upstream failures (timeouts, 429/5xx, open circuit) are not the rows' fault: hand them back
+            // untouched for a later drain instead of stamping error_log, and don't multiply calls by bisecting
+            if (OpenAICircuitBreaker.isUpstreamFailure(result.error())) {
+                return Mono.fromCallable(() -> {
+                    log.warn("OpenAI unavailable, releasing {} transactions for a later run", leftover.size());
+                    batchPersistenceService.releaseClaims(leftover, claimOwner);
+                    drain.released.addAndGet(leftover.size());
+                    return result.saved();
+                }).subscribeOn(Schedulers.boundedElastic());
+            }
+
+            if (batch.size() == 1) {
+                String errorLog = result.error() != null
+                        ? "Batch processing failed: " + result.error().getMessage()
+                        : BatchPersistenceService.NO_RESULT_ERROR;
+                return Mono.fromCallable(() -> {
+                    log.warn("No parse result for raw transaction IDs: {}",
+                            leftover.stream().map(RawTransaction::getId).toList());
+                    batchPersistenceService.markBatchFailed(leftover, errorLog, claimOwner);
+                    return result.saved();
+                }).subscribeOn(Schedulers.boundedElastic());
+            }
+
+            int half = (leftover.size() + 1) / 2;
+            List<List<RawTransaction>> halves = leftover.size() == 1
+                    ? List.of(leftover)
+                    : List.of(leftover.subList(0, half), leftover.subList(half, leftover.size()));
+            meterRegistry.counter("b4b.categorization.bisect.retries").increment(halves.size());
+            log.info("Retrying {} of {} transactions in {} smaller batches",
+                    leftover.size(), batch.size(), halves.size());
+
+            return Flux.fromIterable(halves)
+                    .concatMap(part -> dispatchToOpenAI(part, drain))
+                    .reduce(result.saved(), Integer::sum);
+        });
+    }
+
+    private Mono<Attempt> attempt(List<RawTransaction> batch, Drain drain) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        meterRegistry.counter("b4b.categorization.messages", "path", "llm").increment(batch.size());
+
+        // Rows not yet persisted; whatever is left when the response ends is retried or failed
+        Map<Long, RawTransaction> pending = new LinkedHashMap<>();
+        batch.forEach(rawTx -> pending.put(rawTx.getId(), rawTx));
+        AtomicInteger saved = new AtomicInteger();
+
+        Flux<ParsedTransaction> results = openAIConfig.isStreamCompletions()
+                ? openAIService.streamTransactions(batch)
+                : openAIService.parseTransactionsAsync(batch).flatMapIterable(parsed -> parsed);
+
+        return results
+                // Persist in small groups while the model is still generating
+                .bufferTimeout(PERSIST_GROUP_SIZE, PERSIST_GROUP_WINDOW)
+                // JDBC is blocking, keep it off the Netty event loop
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(group -> saved.addAndGet(persistGroup(pending, group, drain)))
+                .then(Mono.fromCallable(() -> {
+                    sample.stop(meterRegistry.timer("b4b.categorization.llm.latency", "outcome", "success"));
+                    return new Attempt(saved.get(), List.copyOf(pending.values()), null);
+                }))
+                .onErrorResume(e -> {
+                    sample.stop(meterRegistry.timer("b4b.categorization.llm.latency", "outcome", "error"));
+                    if (OpenAICircuitBreaker.isUpstreamFailure(e)) {
+                        log.warn("OpenAI call for {} transactions failed: {}", batch.size(), e.toString());
+                    } else {
+                        log.error("OpenAI call for {} transactions failed", batch.size(), e);
+                    }
+                    return Mono.just(new Attempt(saved.get(), List.copyOf(pending.values()), e));
+                });
     }
 
-    public void processSingleTransaction(Long rawTransactionId) {
-        RawTransaction rawTx = rawTransactionRepository.findById(rawTransactionId)
-                .orElseThrow(() -> new RuntimeException("Transaction not found: " + rawTransactionId));
+    private int persistGroup(Map<Long, RawTransaction> pending, List<ParsedTransaction> group, Drain drain) {
+        Map<Long, ParsedTransaction> resultsById = new LinkedHashMap<>();
+        List<RawTransaction> rows = new ArrayList<>();
 
-        if (rawTx.getIsProcessed()) {
-            log.info("Transaction {} already processed", rawTransactionId);
-            return;
+        for (ParsedTransaction parsed : group) {
+            RawTransaction rawTx = pending.remove(parsed.getId());
+            if (rawTx == null) {
+                log.warn("Unexpected or duplicate parse result for raw transaction ID: {}", parsed.getId());
+                continue;
+            }
+            resultsById.put(rawTx.getId(), parsed);
+            rows.add(rawTx);
         }
 
-        try {
-            List<ParsedTransaction> parsed = openAIService.parseTransactions(List.of(rawTx));
+        if (rows.isEmpty()) {
+            return 0;
+        }
 
-            if (!parsed.isEmpty()) {
-                ParsedTransaction parsedTx = parsed.get(0);
+        int saved = persistResults(rows, resultsById, drain);
+        cacheResults(rows, resultsById);
+        return saved;
+    }
 
-                Transaction transaction = Transaction.builder()
-                        .rawTransactionId(rawTx.getId())
-                        .itemName(parsedTx.getItemName())
-                        .amount(parsedTx.getAmount())
-                        .currency(parsedTx.getCurrency() != null ? parsedTx.getCurrency() : "CZK")
-                        .category(parsedTx.getCategory())
-                        .sentimentTag(parsedTx.getSentimentTag())
-                        .build();
+    private int persistResults(List<RawTransaction> batch, Map<Long, ParsedTransaction> resultsById, Drain drain) {
+        try {
+            List<Transaction> saved = batchPersistenceService.saveParsedBatch(batch, resultsById, claimOwner);
+            saved.stream()
+                    .collect(Collectors.groupingBy(Transaction::getTelegramChatId, Collectors.counting()))
+                    .forEach((chatId, count) -> drain.recordSaved(chatId, count.intValue()));
+            return saved.size();
+        } catch (Exception e) {
+            log.warn("Bulk save of {} transactions failed, falling back to per-row saves", batch.size(), e);
+        }
 
-                transactionRepository.save(transaction);
-                rawTx.setIsProcessed(true);
-                rawTransactionRepository.save(rawTx);
+        int saved = 0;
+        List<RawTransaction> unmatched = new ArrayList<>();
+        for (RawTransaction rawTx : batch) {
+            ParsedTransaction parsed = resultsById.get(rawTx.getId());
+            if (parsed == null) {
+                unmatched.add(rawTx);
+                continue;
+            }
 
-                log.info("Successfully processed single transaction: {}", rawTransactionId);
+            try {
+                if (batchPersistenceService.saveParsedTransaction(rawTx, parsed, claimOwner)) {
+                    drain.recordSaved(rawTx.getTelegramChatId(), 1);
+                    saved++;
+                }
+            } catch (Exception e) {
+                log.error("Error saving transaction ID: {}", rawTx.getId(), e);
+                batchPersistenceService.markBatchFailed(List.of(rawTx), "Error during save: " + e.getMessage(),
+                        claimOwner);
             }
+        }
 
+        batchPersistenceService.markBatchFailed(unmatched, BatchPersistenceService.NO_RESULT_ERROR, claimOwner);
+        return saved;
+    }
+
+    private void cacheResults(List<RawTransaction> batch, Map<Long, ParsedTransaction> resultsById) {
+        try {
+            parseCacheService.store(batch, resultsById);
         } catch (Exception e) {
-            log.error("Error processing single transaction: {}", rawTransactionId, e);
-            rawTx.setErrorLog(e.getMessage());
-            rawTransactionRepository.save(rawTx);
+            log.warn("Failed to store {} parse results in cache", resultsById.size(), e);
+        }
+    }
+
+    private record LocalPass(int saved, List<RawTransaction> remaining) {
+    }
+
+    private record Attempt(int saved, List<RawTransaction> leftover, Throwable error) {
+    }
+
+    // One pass over the backlog and everyone waiting on it. turn completes when the drain may start;
+    // the first waiter to see it runs the drain on its own thread, the rest wait for the result.
+    private static final class Drain {
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<DrainResult> result = new CompletableFuture<>();
+        private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+        private final AtomicInteger released = new AtomicInteger();
+        private final Map<Long, AtomicInteger> processed = new ConcurrentHashMap<>();
+
+        private void recordSaved(long chatId, int count) {
+            int soFar = processed.computeIfAbsent(chatId, id -> new AtomicInteger()).addAndGet(count);
+            listeners.forEach(listener -> listener.onProgress(chatId, soFar));
+        }
+
+        private Map<Long, Integer> processedByChat() {
+            Map<Long, Integer> snapshot = new HashMap<>();
+            processed.forEach((chatId, count) -> snapshot.put(chatId, count.get()));
+            return Map.copyOf(snapshot);
         }
     }
-}
\ No newline at end of file
+}
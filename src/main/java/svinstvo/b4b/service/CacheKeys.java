@@ -0,0 +1,23 @@
+package svinstvo.b4b.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Content hashes used as keys by the parse and advice caches
+final class CacheKeys {
+
+    private CacheKeys() {
+    }
+
+    // Parts are joined with newlines, so callers put the prompt signature first
+    static String sha256(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(String.join("\n", parts).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
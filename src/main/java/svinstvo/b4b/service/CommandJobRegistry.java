@@ -0,0 +1,71 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.TelegramDispatcherConfig;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Long-running bot commands (/sync, /advice) run here instead of on the chat's dispatcher lane.
+// At most one job per chat and type is in flight; a repeat while it runs is refused.
+@Service
+@Slf4j
+public class CommandJobRegistry {
+
+    public enum JobType {
+        SYNC, ADVICE
+    }
+
+    private record JobKey(long chatId, JobType type) {
+    }
+
+    private final TelegramDispatcherConfig dispatcherConfig;
+    private final Set<JobKey> running = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CommandJobRegistry(TelegramDispatcherConfig dispatcherConfig, MeterRegistry meterRegistry) {
+        this.dispatcherConfig = dispatcherConfig;
+        meterRegistry.gaugeCollectionSize("b4b.bot.jobs.running", List.of(), running);
+    }
+
+    // False, without running the job, when the chat already has a job of this type in flight
+    public boolean submit(long chatId, JobType type, Runnable job) {
+        JobKey key = new JobKey(chatId, type);
+        if (!running.add(key)) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } catch (Exception e) {
+                    log.error("{} job for chat {} failed", type, chatId, e);
+                } finally {
+                    running.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(key);
+            throw e;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(dispatcherConfig.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} bot command jobs still running at shutdown, interrupting", running.size());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.IngestionConfig;
+import svinstvo.b4b.event.RawTransactionsIngestedEvent;
+import svinstvo.b4b.model.RawTransaction;
+import svinstvo.b4b.repository.RawTransactionBatchRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind group commit for incoming raw messages: rows arriving within maxDelay of each other
+// share one INSERT ... ON CONFLICT DO NOTHING. Each future completes once its row is durable,
+// with true if it was inserted and false if the message was already stored.
+@Service
+@Slf4j
+public class IngestionBuffer {
+
+    private final RawTransactionBatchRepository batchRepository;
+    private final IngestionConfig ingestionConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockingQueue<PendingRow> queue;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final Counter duplicates;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public IngestionBuffer(RawTransactionBatchRepository batchRepository,
+                           IngestionConfig ingestionConfig,
+                           ApplicationEventPublisher eventPublisher,
+                           MeterRegistry meterRegistry) {
+        this.batchRepository = batchRepository;
+        this.ingestionConfig = ingestionConfig;
+        this.eventPublisher = eventPublisher;
+        this.queue = new LinkedBlockingQueue<>(ingestionConfig.getQueueCapacity());
+        this.flushTimer = meterRegistry.timer("b4b.ingestion.flush.latency");
+        this.flushSize = meterRegistry.summary("b4b.ingestion.flush.size");
+        this.duplicates = meterRegistry.counter("b4b.ingestion.duplicates");
+        meterRegistry.gaugeCollectionSize("b4b.ingestion.queue.size", List.of(), queue);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = Thread.ofPlatform().name("ingestion-flusher").daemon().start(this::flushLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public CompletableFuture<Boolean> submit(RawTransaction rawTransaction) {
+        CompletableFuture<Boolean> stored = new CompletableFuture<>();
+        if (!running || !queue.offer(new PendingRow(rawTransaction, stored))) {
+            stored.completeExceptionally(new RejectedExecutionException("Ingestion buffer is full or stopped"));
+        }
+        return stored;
+    }
+
+    private void flushLoop() {
+        List<PendingRow> group = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(group);
+            } catch (InterruptedException e) {
+                // Shutdown: fall through and flush whatever is already collected
+                queue.drainTo(group, ingestionConfig.getMaxBatchSize() - group.size());
+            }
+            flush(group);
+            group.clear();
+        }
+    }
+
+    // Blocks for the first row, then gathers more until the group is full or maxDelay has passed
+    private void collect(List<PendingRow> group) throws InterruptedException {
+        group.add(queue.take());
+        long deadline = System.nanoTime() + ingestionConfig.getMaxDelay().toNanos();
+
+        while (group.size() < ingestionConfig.getMaxBatchSize()) {
+            queue.drainTo(group, ingestionConfig.getMaxBatchSize() - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= ingestionConfig.getMaxBatchSize() || remaining <= 0) {
+                return;
+            }
+            PendingRow next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+        }
+    }
+
+    private void flush(List<PendingRow> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        // The same message twice in one group (Telegram re-delivery) is written once
+        List<RawTransaction> rows = new ArrayList<>();
+        Set<Integer> messageIds = new HashSet<>();
+        for (PendingRow pending : group) {
+            if (messageIds.add(pending.row().getTelegramMessageId())) {
+                rows.add(pending.row());
+            }
+        }
+
+        try {
+            Set<Integer> inserted = flushTimer.recordCallable(() -> batchRepository.insertIgnoringDuplicates(rows));
+            flushSize.record(rows.size());
+
+            int created = 0;
+            Set<Long> chatIds = new HashSet<>();
+            for (PendingRow pending : group) {
+                // remove() so only the first future for a message reports it as new
+                boolean isNew = inserted.remove(pending.row().getTelegramMessageId());
+                if (isNew) {
+                    created++;
+                    chatIds.add(pending.row().getTelegramChatId());
+                } else {
+                    duplicates.increment();
+                }
+                pending.stored().complete(isNew);
+            }
+            log.debug("Group commit of {} raw messages, {} new", group.size(), created);
+            if (created > 0) {
+                eventPublisher.publishEvent(new RawTransactionsIngestedEvent(created, chatIds));
+            }
+        } catch (Exception e) {
+            log.error("Group commit of {} raw messages failed", group.size(), e);
+            group.forEach(pending -> pending.stored().completeExceptionally(e));
+        }
+    }
+
+    private record PendingRow(RawTransaction row, CompletableFuture<Boolean> stored) {
+    }
+}
@@ -1,44 +1,47 @@
 package svinstvo.b4b.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.telegram.telegrambots.meta.api.objects.Message;
-import svinstvo.b4b.model.AppConfig;
+import svinstvo.b4b.config.IngestionConfig;
 import svinstvo.b4b.model.RawTransaction;
 import svinstvo.b4b.repository.AppConfigRepository;
-import svinstvo.b4b.repository.RawTransactionRepository;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class IngestionService {
 
-    private final RawTransactionRepository rawTransactionRepository;
     private final AppConfigRepository appConfigRepository;
+    private final IngestionBuffer ingestionBuffer;
+    private final IngestionConfig ingestionConfig;
 
     private static final String LAST_UPDATE_ID_KEY = "last_telegram_update_id";
 
-    @Transactional
-    public void saveRawMessage(Message message) {
+    private final AtomicInteger lastUpdateId = new AtomicInteger();
+    private final AtomicInteger updatesSinceCheckpoint = new AtomicInteger();
+    // Single thread: bursts of "every N updates" triggers queue up instead of racing
+    private final ExecutorService checkpointExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("offset-checkpoint").factory());
+    private int checkpointedUpdateId;
+
+    // Completes once the row is committed: true if stored, false if the message was already there
+    public CompletableFuture<Boolean> saveRawMessage(Message message) {
         if (message.getText() == null || message.getText().isBlank()) {
             log.debug("Skipping empty message");
-            return;
-        }
-
-        // Check for duplicates
-        Optional<RawTransaction> existing = rawTransactionRepository
-                .findByTelegramMessageId(message.getMessageId());
-
-        if (existing.isPresent()) {
-            log.debug("Message {} already exists, skipping", message.getMessageId());
-            return;
+            return CompletableFuture.completedFuture(false);
         }
 
         // Convert Unix timestamp to LocalDateTime
@@ -55,30 +58,70 @@ public class IngestionService {
                 .isProcessed(false)
                 .build();
 
-        rawTransactionRepository.save(rawTransaction);
-
-        log.info("Saved raw transaction from message ID: {} - Text: '{}'",
-                message.getMessageId(),
-                message.getText().substring(0, Math.min(50, message.getText().length())));
+        return ingestionBuffer.submit(rawTransaction)
+                .whenComplete((stored, error) -> {
+                    if (error != null) {
+                        return;
+                    }
+                    if (stored) {
+                        log.info("Saved raw transaction from message ID: {} - Text: '{}'",
+                                message.getMessageId(),
+                                message.getText().substring(0, Math.min(50, message.getText().length())));
+                    } else {
+                        log.debug("Message {} already exists, skipping", message.getMessageId());
+                    }
+                });
     }
 
+    // Served from memory; app_config only holds the last checkpoint
     public Integer getLastUpdateId() {
-        return appConfigRepository.findById(LAST_UPDATE_ID_KEY)
+        return lastUpdateId.get();
+    }
+
+    // Monotonic: an older ID arriving late never moves the offset back
+    public void updateLastUpdateId(Integer updateId) {
+        int previous = lastUpdateId.getAndAccumulate(updateId, Math::max);
+        if (updateId <= previous) {
+            return;
+        }
+
+        if (updatesSinceCheckpoint.incrementAndGet() >= ingestionConfig.getCheckpointEveryUpdates()) {
+            checkpointExecutor.execute(this::checkpointLastUpdateId);
+        }
+    }
+
+    @PostConstruct
+    public void loadCheckpoint() {
+        int checkpoint = appConfigRepository.findById(LAST_UPDATE_ID_KEY)
                 .map(config -> Integer.parseInt(config.getConfigValue()))
                 .orElse(0);
+        lastUpdateId.accumulateAndGet(checkpoint, Math::max);
+        checkpointedUpdateId = checkpoint;
+        log.info("Loaded last_telegram_update_id checkpoint: {}", checkpoint);
     }
 
-    @Transactional
-    public void updateLastUpdateId(Integer updateId) {
-        AppConfig config = appConfigRepository.findById(LAST_UPDATE_ID_KEY)
-                .orElse(AppConfig.builder()
-                        .configKey(LAST_UPDATE_ID_KEY)
-                        .build());
+    // Coalesces every offset change since the last run into one conditional upsert
+    @Scheduled(fixedDelayString = "${b4b.ingestion.checkpoint-interval-ms:5000}")
+    public synchronized void checkpointLastUpdateId() {
+        int current = lastUpdateId.get();
+        if (current <= checkpointedUpdateId) {
+            return;
+        }
 
-        config.setConfigValue(String.valueOf(updateId));
-        appConfigRepository.save(config);
+        updatesSinceCheckpoint.set(0);
+        try {
+            appConfigRepository.advanceIntValue(LAST_UPDATE_ID_KEY, current);
+            checkpointedUpdateId = current;
+            log.debug("Checkpointed last_telegram_update_id: {}", current);
+        } catch (Exception e) {
+            log.warn("Failed to checkpoint last_telegram_update_id {}", current, e);
+        }
+    }
 
-        log.debug("Updated last_telegram_update_id to: {}", updateId);
+    @PreDestroy
+    public void checkpointOnShutdown() {
+        checkpointExecutor.shutdown();
+        checkpointLastUpdateId();
     }
 
     public boolean isCommand(String text) {
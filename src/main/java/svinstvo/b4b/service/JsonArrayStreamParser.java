@@ -0,0 +1,124 @@
+package svinstvo.b4b.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Incrementally parses a JSON array of objects fed in arbitrary text fragments.
+// Each element is returned as soon as its closing brace arrives; anything before the
+// opening '[' (e.g. a ```json fence) and after the closing ']' is ignored.
+// Truncated or malformed input never loses the elements that were already complete.
+@Slf4j
+public class JsonArrayStreamParser<T> {
+
+    private final ObjectMapper objectMapper;
+    private final Class<T> elementType;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean arrayStarted;
+    private boolean finished;
+    private boolean malformed;
+    private int depth;
+    private TokenBuffer element;
+
+    public JsonArrayStreamParser(ObjectMapper objectMapper, Class<T> elementType) {
+        this.objectMapper = objectMapper;
+        this.elementType = elementType;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    public List<T> feed(String fragment) {
+        if (finished || fragment == null || fragment.isEmpty()) {
+            return List.of();
+        }
+
+        if (!arrayStarted) {
+            int start = fragment.indexOf('[');
+            if (start < 0) {
+                return List.of();
+            }
+            arrayStarted = true;
+            fragment = fragment.substring(start);
+        }
+
+        byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+        } catch (IOException e) {
+            log.warn("Could not feed JSON fragment: {}", e.getMessage());
+            finished = true;
+            malformed = true;
+            return List.of();
+        }
+        return drain();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    private List<T> drain() {
+        List<T> completed = new ArrayList<>();
+        try {
+            drainInto(completed);
+        } catch (IOException e) {
+            log.warn("Malformed JSON after {} complete elements: {}", completed.size(), e.getMessage());
+            finished = true;
+            malformed = true;
+        }
+        return completed;
+    }
+
+    private void drainInto(List<T> completed) throws IOException {
+        JsonToken token;
+        while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (element == null) {
+                if (token == JsonToken.END_ARRAY && parser.getParsingContext().inRoot()) {
+                    finished = true;
+                } else if (token == JsonToken.START_OBJECT) {
+                    element = new TokenBuffer(parser);
+                    element.copyCurrentEvent(parser);
+                    depth = 1;
+                }
+                continue;
+            }
+
+            element.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd() && --depth == 0) {
+                readElement().ifPresent(completed::add);
+                element = null;
+            }
+        }
+    }
+
+    // A malformed element is dropped rather than failing the rest of the array
+    private Optional<T> readElement() {
+        try (JsonParser elementParser = element.asParser(objectMapper)) {
+            return Optional.ofNullable(objectMapper.readValue(elementParser, elementType));
+        } catch (IOException e) {
+            log.warn("Skipping malformed array element: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
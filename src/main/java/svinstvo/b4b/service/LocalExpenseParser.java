@@ -0,0 +1,197 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.LocalParserConfig;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Map.entry;
+
+// Deterministic parser for simple "<item> <amount> [currency]" messages.
+// Only returns a result when it is confident; everything else goes to OpenAI.
+@Service
+@Slf4j
+public class LocalExpenseParser {
+
+    // The amount may not be followed by more digits, even after a separator: otherwise "15,000"
+    // backtracks to "15". Grouped numbers are left to OpenAI.
+    private static final Pattern AMOUNT_PATTERN = Pattern.compile(
+            "(?<![\\p{L}\\d.,])(?<prefix>[€$])?\\s*(?<amount>\\d{1,7}(?:[.,]\\d{1,2})?)(?![.,]?\\d)\\s*" +
+                    "(?<suffix>czk|kč|kc|eur|€|usd|\\$)?(?![\\p{L}\\d])",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    private static final Pattern WORD_SPLIT = Pattern.compile("[^\\p{L}]+");
+
+    private static final Map<String, String> CURRENCIES = Map.of(
+            "czk", "CZK", "kč", "CZK", "kc", "CZK",
+            "eur", "EUR", "€", "EUR",
+            "usd", "USD", "$", "USD");
+
+    // Categories must match the ones in OpenAIService.CATEGORIZATION_SYSTEM_PROMPT
+    private static final Map<String, String> KEYWORD_CATEGORIES = Map.ofEntries(
+            entry("coffee", "Overpriced-Food"), entry("latte", "Overpriced-Food"),
+            entry("cappuccino", "Overpriced-Food"), entry("beer", "Overpriced-Food"),
+            entry("wine", "Overpriced-Food"), entry("burger", "Overpriced-Food"),
+            entry("pizza", "Overpriced-Food"), entry("kebab", "Overpriced-Food"),
+            entry("restaurant", "Overpriced-Food"), entry("lunch", "Overpriced-Food"),
+            entry("dinner", "Overpriced-Food"), entry("breakfast", "Overpriced-Food"),
+            entry("snack", "Overpriced-Food"), entry("chips", "Overpriced-Food"),
+            entry("wolt", "Overpriced-Food"), entry("bolt food", "Overpriced-Food"),
+            entry("groceries", "Essential-Food"), entry("grocery", "Essential-Food"),
+            entry("supermarket", "Essential-Food"), entry("bread", "Essential-Food"),
+            entry("milk", "Essential-Food"), entry("eggs", "Essential-Food"),
+            entry("vegetables", "Essential-Food"), entry("fruit", "Essential-Food"),
+            entry("lidl", "Essential-Food"), entry("albert", "Essential-Food"),
+            entry("billa", "Essential-Food"), entry("kaufland", "Essential-Food"),
+            entry("tesco", "Essential-Food"),
+            entry("metro", "Transport"), entry("tram", "Transport"), entry("bus", "Transport"),
+            entry("train", "Transport"), entry("ticket", "Transport"), entry("taxi", "Transport"),
+            entry("uber", "Transport"), entry("bolt", "Transport"), entry("fuel", "Transport"),
+            entry("petrol", "Transport"), entry("parking", "Transport"),
+            entry("rent", "Rent"),
+            entry("cinema", "Fun"), entry("movie", "Fun"), entry("concert", "Fun"),
+            entry("netflix", "Fun"), entry("spotify", "Fun"), entry("game", "Fun"),
+            entry("steam", "Fun"), entry("party", "Fun"),
+            entry("laptop", "Tech"), entry("phone", "Tech"), entry("headphones", "Tech"),
+            entry("charger", "Tech"), entry("keyboard", "Tech"),
+            entry("electricity", "Utilities"), entry("gas", "Utilities"), entry("water", "Utilities"),
+            entry("internet", "Utilities"), entry("mobile", "Utilities"), entry("heating", "Utilities"),
+            entry("clothes", "Shopping"), entry("shoes", "Shopping"), entry("jacket", "Shopping"),
+            entry("ikea", "Shopping"), entry("amazon", "Shopping"),
+            entry("pharmacy", "Health"), entry("medicine", "Health"), entry("doctor", "Health"),
+            entry("dentist", "Health"), entry("vitamins", "Health"), entry("gym", "Health"));
+
+    private final LocalParserConfig localParserConfig;
+    private final Timer hitTimer;
+    private final Timer missTimer;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public LocalExpenseParser(LocalParserConfig localParserConfig, MeterRegistry meterRegistry) {
+        this.localParserConfig = localParserConfig;
+        this.hitTimer = meterRegistry.timer("b4b.categorization.local.latency", "result", "hit");
+        this.missTimer = meterRegistry.timer("b4b.categorization.local.latency", "result", "miss");
+        this.hitCounter = meterRegistry.counter("b4b.categorization.messages", "path", "local");
+        this.missCounter = meterRegistry.counter("b4b.categorization.local.misses");
+        Gauge.builder("b4b.categorization.local.hit.ratio", this, LocalExpenseParser::hitRatio)
+                .register(meterRegistry);
+    }
+
+    public Optional<ParsedTransaction> parse(RawTransaction rawTransaction) {
+        if (!localParserConfig.isEnabled()) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        Optional<ParsedTransaction> result = tryParse(rawTransaction);
+        long elapsed = System.nanoTime() - start;
+
+        if (result.isPresent()) {
+            hitTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            hitCounter.increment();
+            log.debug("Local parser matched raw transaction {}: {} {} ({})", rawTransaction.getId(),
+                    result.get().getAmount(), result.get().getCurrency(), result.get().getCategory());
+        } else {
+            missTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            missCounter.increment();
+        }
+        return result;
+    }
+
+    private Optional<ParsedTransaction> tryParse(RawTransaction rawTransaction) {
+        String text = rawTransaction.getMessageText();
+        if (text == null || text.isBlank()) {
+            return Optional.empty();
+        }
+
+        Matcher matcher = AMOUNT_PATTERN.matcher(text);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        int amountStart = matcher.start();
+        int amountEnd = matcher.end();
+        String amountText = matcher.group("amount");
+        String currencyToken = matcher.group("prefix") != null ? matcher.group("prefix") : matcher.group("suffix");
+
+        // More than one number ("2 beers 180", "1 500") is ambiguous
+        if (matcher.find()) {
+            return Optional.empty();
+        }
+
+        BigDecimal amount = new BigDecimal(amountText.replace(',', '.'));
+        if (amount.signum() <= 0) {
+            return Optional.empty();
+        }
+
+        String itemName = text.substring(0, amountStart) + " " + text.substring(amountEnd);
+        itemName = TextNormalizer.clean(itemName);
+        List<String> words = WORD_SPLIT.splitAsStream(itemName.toLowerCase(Locale.ROOT))
+                .filter(word -> !word.isEmpty())
+                .toList();
+        if (words.isEmpty() || words.size() > localParserConfig.getMaxItemWords()) {
+            return Optional.empty();
+        }
+
+        Optional<String> category = categorize(words);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String currency = currencyToken != null
+                ? CURRENCIES.get(currencyToken.toLowerCase(Locale.ROOT))
+                : "CZK";
+
+        return Optional.of(ParsedTransaction.builder()
+                .id(rawTransaction.getId())
+                .itemName(itemName)
+                .amount(amount)
+                .currency(currency)
+                .category(category.get())
+                .build());
+    }
+
+    // Confident only when every known keyword agrees on one category
+    private Optional<String> categorize(List<String> words) {
+        Set<String> categories = new HashSet<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            String category = KEYWORD_CATEGORIES.get(word);
+            if (category == null && word.endsWith("s")) {
+                category = KEYWORD_CATEGORIES.get(word.substring(0, word.length() - 1));
+            }
+            if (i + 1 < words.size()) {
+                String pairCategory = KEYWORD_CATEGORIES.get(word + " " + words.get(i + 1));
+                if (pairCategory != null) {
+                    category = pairCategory;
+                    i++;
+                }
+            }
+            if (category != null) {
+                categories.add(category);
+            }
+        }
+        return categories.size() == 1 ? Optional.of(categories.iterator().next()) : Optional.empty();
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0.0 : hits / total;
+    }
+}
@@ -0,0 +1,88 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.SchedulerConfig;
+import svinstvo.b4b.event.RawTransactionsIngestedEvent;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Starts a drain when enough new messages have arrived or the oldest one has waited micro-batch-max-age,
+// whichever comes first. Drains run one at a time; messages arriving meanwhile start the next window.
+@Service
+@Slf4j
+public class MicroBatchTrigger {
+
+    private final BatchProcessorService batchProcessorService;
+    private final SchedulerConfig schedulerConfig;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("micro-batch-trigger").daemon().factory());
+
+    // Guarded by this
+    private int pendingCount;
+    private ScheduledFuture<?> ageFlush;
+
+    public MicroBatchTrigger(BatchProcessorService batchProcessorService,
+                             SchedulerConfig schedulerConfig,
+                             MeterRegistry meterRegistry) {
+        this.batchProcessorService = batchProcessorService;
+        this.schedulerConfig = schedulerConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener
+    public synchronized void onIngested(RawTransactionsIngestedEvent event) {
+        if (!schedulerConfig.isMicroBatchEnabled()) {
+            return;
+        }
+
+        pendingCount += event.count();
+        if (pendingCount >= schedulerConfig.getMicroBatchSize()) {
+            cancelAgeFlush();
+            executor.execute(() -> flush("size"));
+        } else if (ageFlush == null) {
+            ageFlush = executor.schedule(() -> flush("age"),
+                    schedulerConfig.getMicroBatchMaxAge().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void flush(String reason) {
+        int count;
+        synchronized (this) {
+            if (pendingCount == 0) {
+                return;
+            }
+            count = pendingCount;
+            pendingCount = 0;
+            cancelAgeFlush();
+        }
+
+        meterRegistry.counter("b4b.processor.micro.batches", "trigger", reason).increment();
+        log.debug("Micro-batch triggered by {} with {} new messages", reason, count);
+
+        try {
+            batchProcessorService.processPendingTransactions();
+        } catch (Exception e) {
+            log.error("Micro-batch processing failed, leaving rows for the next run", e);
+        }
+    }
+
+    private void cancelAgeFlush() {
+        if (ageFlush != null) {
+            ageFlush.cancel(false);
+            ageFlush = null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+
+import java.time.Instant;
+import java.util.concurrent.TimeoutException;
+
+// Opens after failureThreshold consecutive upstream failures. Once openDuration has passed a single
+// trial call is let through: success closes the circuit, failure opens it again.
+// Callers take a permission once per logical call (not per retry), record its final outcome,
+// and always call releaseTrial() when a trial call ends, however it ends.
+@Service
+@Slf4j
+public class OpenAICircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final OpenAIResilienceConfig resilienceConfig;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private boolean trialInFlight;
+
+    public OpenAICircuitBreaker(OpenAIResilienceConfig resilienceConfig, MeterRegistry meterRegistry) {
+        this.resilienceConfig = resilienceConfig;
+        Gauge.builder("b4b.openai.circuit.open", this, breaker -> breaker.isCallPermitted() ? 0 : 1)
+                .register(meterRegistry);
+    }
+
+    // Cheap check for callers that want to avoid starting work (e.g. claiming a batch)
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> openDurationElapsed();
+            case HALF_OPEN -> !trialInFlight;
+        };
+    }
+
+    // True when the caller got the half-open trial slot and must hand it back via releaseTrial()
+    public synchronized boolean acquirePermission() {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.OPEN && openDurationElapsed()) {
+            log.info("OpenAI circuit half-open, letting a trial call through");
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return true;
+        }
+        throw new OpenAIUnavailableException("OpenAI circuit is open after " + consecutiveFailures + " failures");
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("OpenAI circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure(Throwable error) {
+        if (!isUpstreamFailure(error)) {
+            // The request itself was bad, upstream answered fine
+            return;
+        }
+
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= resilienceConfig.getFailureThreshold()) {
+            if (state != State.OPEN) {
+                log.warn("OpenAI circuit opened for {} after {} consecutive failures",
+                        resilienceConfig.getOpenDuration(), consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = Instant.now();
+            trialInFlight = false;
+        }
+    }
+
+    // Frees the trial slot after the trial ended, including by cancellation; if neither success nor
+    // failure was recorded the circuit stays half-open and the next call becomes the trial
+    public synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    // Timeouts, connection errors, 429, 408 and 5xx; other 4xx mean the request was rejected on its merits
+    public static boolean isUpstreamFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OpenAIUnavailableException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof WebClientResponseException response) {
+                return response.getStatusCode().is5xxServerError()
+                        || response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                        || response.getStatusCode().value() == HttpStatus.REQUEST_TIMEOUT.value();
+            }
+            if (cause instanceof WebClientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean openDurationElapsed() {
+        return openedAt.plus(resilienceConfig.getOpenDuration()).isBefore(Instant.now());
+    }
+}
@@ -0,0 +1,148 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Client-side token buckets for OpenAI's per-minute request and token limits.
+// Bucket sizes and levels follow the x-ratelimit-* headers of every response,
+// and a Retry-After from a 429 holds back all callers, not just the one that got it.
+@Service
+@Slf4j
+public class OpenAIRateLimiter {
+
+    private static final Pattern RESET_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final double NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+
+    private final Timer waitTimer;
+
+    private double requestCapacity;
+    private double tokenCapacity;
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefill = System.nanoTime();
+    private long blockedUntil = lastRefill;
+
+    public OpenAIRateLimiter(OpenAIResilienceConfig resilienceConfig, MeterRegistry meterRegistry) {
+        this.requestCapacity = resilienceConfig.getRequestsPerMinute();
+        this.tokenCapacity = resilienceConfig.getTokensPerMinute();
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.waitTimer = meterRegistry.timer("b4b.openai.rate.limit.wait");
+    }
+
+    // Reserves one request and the estimated tokens, delaying the caller until both buckets cover it
+    public Mono<Void> acquire(int estimatedTokens) {
+        Duration wait = reserve(estimatedTokens);
+        waitTimer.record(wait);
+
+        if (wait.isZero()) {
+            return Mono.empty();
+        }
+        log.debug("Rate limiter delaying OpenAI call by {} ms", wait.toMillis());
+        return Mono.delay(wait).then();
+    }
+
+    public synchronized void update(HttpHeaders headers) {
+        refill();
+        long now = System.nanoTime();
+
+        Double requestLimit = number(headers.getFirst("x-ratelimit-limit-requests"));
+        Double tokenLimit = number(headers.getFirst("x-ratelimit-limit-tokens"));
+        Double remainingRequests = number(headers.getFirst("x-ratelimit-remaining-requests"));
+        Double remainingTokens = number(headers.getFirst("x-ratelimit-remaining-tokens"));
+
+        if (requestLimit != null && requestLimit > 0) {
+            requestCapacity = requestLimit;
+        }
+        if (tokenLimit != null && tokenLimit > 0) {
+            tokenCapacity = tokenLimit;
+        }
+        // Never raise the level above what is left locally: other calls may already hold reservations
+        if (remainingRequests != null) {
+            availableRequests = Math.min(availableRequests, remainingRequests);
+        }
+        if (remainingTokens != null) {
+            availableTokens = Math.min(availableTokens, remainingTokens);
+        }
+
+        if ((remainingRequests != null && remainingRequests < 1) || (remainingTokens != null && remainingTokens < 1)) {
+            Duration reset = max(resetDuration(headers.getFirst("x-ratelimit-reset-requests")),
+                    resetDuration(headers.getFirst("x-ratelimit-reset-tokens")));
+            blockedUntil = Math.max(blockedUntil, now + reset.toNanos());
+        }
+    }
+
+    public synchronized void blockFor(Duration retryAfter) {
+        blockedUntil = Math.max(blockedUntil, System.nanoTime() + retryAfter.toNanos());
+    }
+
+    synchronized Duration reserve(int estimatedTokens) {
+        refill();
+        long now = System.nanoTime();
+
+        availableRequests -= 1;
+        // A single call larger than the whole bucket would otherwise wait forever
+        availableTokens -= Math.min(estimatedTokens, tokenCapacity);
+
+        double requestWait = availableRequests < 0 ? -availableRequests / (requestCapacity / NANOS_PER_MINUTE) : 0;
+        double tokenWait = availableTokens < 0 ? -availableTokens / (tokenCapacity / NANOS_PER_MINUTE) : 0;
+        long wait = (long) Math.max(Math.max(requestWait, tokenWait), blockedUntil - now);
+
+        return wait > 0 ? Duration.ofNanos(wait) : Duration.ZERO;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsed = now - lastRefill;
+        lastRefill = now;
+
+        availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestCapacity / NANOS_PER_MINUTE);
+        availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokenCapacity / NANOS_PER_MINUTE);
+    }
+
+    // "1s", "6m0s", "20ms", "1h2m3.5s"
+    static Duration resetDuration(String value) {
+        if (value == null) {
+            return Duration.ZERO;
+        }
+
+        Duration total = Duration.ZERO;
+        Matcher matcher = RESET_PART.matcher(value);
+        while (matcher.find()) {
+            BigDecimal amount = new BigDecimal(matcher.group(1));
+            long millis = switch (matcher.group(2)) {
+                case "h" -> amount.multiply(BigDecimal.valueOf(3_600_000)).longValue();
+                case "m" -> amount.multiply(BigDecimal.valueOf(60_000)).longValue();
+                case "s" -> amount.multiply(BigDecimal.valueOf(1_000)).longValue();
+                default -> amount.longValue();
+            };
+            total = total.plusMillis(millis);
+        }
+        return total;
+    }
+
+    private static Double number(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
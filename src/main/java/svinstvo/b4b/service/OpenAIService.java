@@ -1,19 +1,38 @@
 package svinstvo.b4b.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 import svinstvo.b4b.config.OpenAIConfig;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
 import svinstvo.b4b.dto.OpenAIRequest;
 import svinstvo.b4b.dto.OpenAIResponse;
+import svinstvo.b4b.dto.OpenAIStreamChunk;
 import svinstvo.b4b.dto.ParsedTransaction;
 import svinstvo.b4b.model.RawTransaction;
 
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +43,15 @@ public class OpenAIService {
     private final WebClient openAIWebClient;
     private final OpenAIConfig openAIConfig;
     private final ObjectMapper objectMapper;
+    private final TokenBudgetEstimator tokenBudgetEstimator;
+    private final OpenAIResilienceConfig resilienceConfig;
+    private final OpenAIRateLimiter rateLimiter;
+    private final OpenAICircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SERVER_SENT_EVENTS =
+            new ParameterizedTypeReference<>() {};
+    private static final String STREAM_DONE = "[DONE]";
 
     private static final String CATEGORIZATION_SYSTEM_PROMPT = """
             You are a financial parser. You will receive a list of raw strings. 
@@ -47,107 +75,293 @@ public class OpenAIService {
             they failed or succeeded. Be concise and direct. Focus on facts and numbers.
             """;
 
-    public List<ParsedTransaction> parseTransactions(List<RawTransaction> rawTransactions) {
-        try {
-            String userPrompt = buildBatchPrompt(rawTransactions);
-
-            OpenAIRequest request = OpenAIRequest.builder()
-                    .model(openAIConfig.getModelMini())
-                    .temperature(0.3)
-                    .maxTokens(2000)
-                    .messages(List.of(
-                            OpenAIRequest.Message.builder()
-                                    .role("system")
-                                    .content(CATEGORIZATION_SYSTEM_PROMPT)
-                                    .build(),
-                            OpenAIRequest.Message.builder()
-                                    .role("user")
-                                    .content(userPrompt)
-                                    .build()
-                    ))
-                    .build();
-
-            log.info("Sending {} transactions to OpenAI for parsing", rawTransactions.size());
-
-            OpenAIResponse response = openAIWebClient.post()
+    // Anything that changes categorization output must be part of this signature
+    public String getCategorizationSignature() {
+        return openAIConfig.getModelMini() + "\n" + CATEGORIZATION_SYSTEM_PROMPT;
+    }
+
+    public Mono<List<ParsedTransaction>> parseTransactionsAsync(List<RawTransaction> rawTransactions) {
+        String userPrompt = buildBatchPrompt(rawTransactions);
+        int maxTokens = tokenBudgetEstimator.maxTokensFor(rawTransactions);
+        OpenAIRequest request = buildCategorizationRequest(userPrompt, maxTokens, false);
+        int promptChars = CATEGORIZATION_SYSTEM_PROMPT.length() + userPrompt.length();
+
+        AtomicLong start = new AtomicLong();
+
+        Mono<OpenAIResponse> call = Mono.defer(() -> {
+            log.info("Sending {} transactions to OpenAI for parsing (max_tokens {})",
+                    rawTransactions.size(), maxTokens);
+            start.set(System.nanoTime());
+
+            return openAIWebClient.post()
                     .uri("/chat/completions")
                     .body(Mono.just(request), OpenAIRequest.class)
                     .retrieve()
-                    .bodyToMono(OpenAIResponse.class)
-                    .block();
+                    .toEntity(OpenAIResponse.class)
+                    .doOnNext(entity -> rateLimiter.update(entity.getHeaders()))
+                    .mapNotNull(HttpEntity::getBody);
+        });
 
-            if (response == null || response.getChoices().isEmpty()) {
-                log.error("Empty response from OpenAI");
-                return List.of();
-            }
+        return resilient(call, estimatedTokens(promptChars, maxTokens), resilienceConfig.getRequestTimeout())
+                .doOnNext(response -> recordUsage(rawTransactions, promptChars, response.getUsage(),
+                        finishReason(response), Duration.ofNanos(System.nanoTime() - start.get())))
+                .map(this::readParsedTransactions)
+                .defaultIfEmpty(List.of())
+                // Logged once by the caller, which knows what the batch was
+                .onErrorMap(e -> new RuntimeException("Failed to parse transactions", e));
+    }
 
-            String jsonContent = response.getChoices().get(0).getMessage().getContent().trim();
+    // stream: true variant - each ParsedTransaction is emitted as soon as its JSON object is complete
+    public Flux<ParsedTransaction> streamTransactions(List<RawTransaction> rawTransactions) {
+        String userPrompt = buildBatchPrompt(rawTransactions);
+        int maxTokens = tokenBudgetEstimator.maxTokensFor(rawTransactions);
+        OpenAIRequest request = buildCategorizationRequest(userPrompt, maxTokens, true);
+        int promptChars = CATEGORIZATION_SYSTEM_PROMPT.length() + userPrompt.length();
 
-            // Remove markdown formatting if present
-            jsonContent = jsonContent.replaceAll("```json\\s*", "").replaceAll("```\\s*$", "").trim();
+        return Flux.defer(() -> {
+                    AtomicLong start = new AtomicLong();
+                    JsonArrayStreamParser<ParsedTransaction> parser =
+                            new JsonArrayStreamParser<>(objectMapper, ParsedTransaction.class);
+                    AtomicReference<OpenAIResponse.Usage> usage = new AtomicReference<>();
+                    AtomicReference<String> finishReason = new AtomicReference<>();
 
-            log.info("OpenAI response: {} tokens used", response.getUsage().getTotalTokens());
-            log.debug("Parsed JSON: {}", jsonContent);
+                    // Only the request up to the response headers is retried; a stream that breaks
+                    // midway is left to the caller, which already holds the rows parsed so far
+                    Mono<ResponseEntity<Flux<ServerSentEvent<String>>>> call = Mono.defer(() -> {
+                        log.info("Streaming {} transactions from OpenAI (max_tokens {})",
+                                rawTransactions.size(), maxTokens);
+                        start.set(System.nanoTime());
+
+                        return openAIWebClient.post()
+                                .uri("/chat/completions")
+                                .accept(MediaType.TEXT_EVENT_STREAM)
+                                .body(Mono.just(request), OpenAIRequest.class)
+                                .retrieve()
+                                .toEntityFlux(SERVER_SENT_EVENTS)
+                                .doOnNext(entity -> rateLimiter.update(entity.getHeaders()));
+                    });
+
+                    return resilient(call, estimatedTokens(promptChars, maxTokens), resilienceConfig.getRequestTimeout())
+                            .flatMapMany(entity -> entity.getBody() != null
+                                    ? entity.getBody().timeout(resilienceConfig.getStreamIdleTimeout())
+                                    : Flux.empty())
+                            .mapNotNull(ServerSentEvent::data)
+                            .takeWhile(data -> !STREAM_DONE.equals(data))
+                            .concatMapIterable(data -> {
+                                try {
+                                    OpenAIStreamChunk chunk = objectMapper.readValue(data, OpenAIStreamChunk.class);
+                                    if (chunk.getUsage() != null) {
+                                        usage.set(chunk.getUsage());
+                                    }
+                                    if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+                                        return List.of();
+                                    }
+
+                                    OpenAIStreamChunk.Choice choice = chunk.getChoices().get(0);
+                                    if (choice.getFinishReason() != null) {
+                                        finishReason.set(choice.getFinishReason());
+                                    }
+                                    return choice.getDelta() == null
+                                            ? List.<ParsedTransaction>of()
+                                            : parser.feed(choice.getDelta().getContent());
+                                } catch (JsonProcessingException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            })
+                            .doOnComplete(() -> recordUsage(rawTransactions, promptChars, usage.get(),
+                                    finishReason.get(), Duration.ofNanos(System.nanoTime() - start.get())));
+                })
+                .onErrorMap(e -> new RuntimeException("Failed to parse transactions", e));
+    }
 
-            List<ParsedTransaction> parsed = objectMapper.readValue(
-                    jsonContent,
-                    new TypeReference<List<ParsedTransaction>>() {}
-            );
+    private OpenAIRequest buildCategorizationRequest(String userPrompt, int maxTokens, boolean stream) {
+        return OpenAIRequest.builder()
+                .model(openAIConfig.getModelMini())
+                .temperature(0.3)
+                .maxTokens(maxTokens)
+                .stream(stream ? Boolean.TRUE : null)
+                .streamOptions(stream ? OpenAIRequest.StreamOptions.builder().includeUsage(true).build() : null)
+                .messages(List.of(
+                        OpenAIRequest.Message.builder()
+                                .role("system")
+                                .content(CATEGORIZATION_SYSTEM_PROMPT)
+                                .build(),
+                        OpenAIRequest.Message.builder()
+                                .role("user")
+                                .content(userPrompt)
+                                .build()
+                ))
+                .build();
+    }
 
-            return parsed;
+    private String finishReason(OpenAIResponse response) {
+        return response.getChoices() == null || response.getChoices().isEmpty()
+                ? null
+                : response.getChoices().get(0).getFinishReason();
+    }
 
-        } catch (Exception e) {
-            log.error("Error parsing transactions with OpenAI", e);
-            throw new RuntimeException("Failed to parse transactions", e);
+    private void recordUsage(List<RawTransaction> rawTransactions, int promptChars,
+                             OpenAIResponse.Usage usage, String finishReason, Duration elapsed) {
+        if ("length".equals(finishReason)) {
+            log.warn("OpenAI response for {} transactions was cut off at max_tokens", rawTransactions.size());
         }
+        tokenBudgetEstimator.recordUsage(rawTransactions, promptChars, usage, finishReason, elapsed);
     }
 
-    public String generateFinancialAdvice(String spendingSummary, Double goalAmount) {
-        try {
-            String userPrompt = String.format("""
-                    The user wants to save %.2f CZK this month.
-                    
-                    Current Spending Summary:
-                    %s
-                    
-                    Provide 3 specific, actionable recommendations.
-                    """, goalAmount, spendingSummary);
-
-            OpenAIRequest request = OpenAIRequest.builder()
-                    .model(openAIConfig.getModelFull())
-                    .temperature(0.7)
-                    .maxTokens(500)
-                    .messages(List.of(
-                            OpenAIRequest.Message.builder()
-                                    .role("system")
-                                    .content(ADVISOR_SYSTEM_PROMPT)
-                                    .build(),
-                            OpenAIRequest.Message.builder()
-                                    .role("user")
-                                    .content(userPrompt)
-                                    .build()
-                    ))
-                    .build();
-
-            log.info("Requesting financial advice from OpenAI");
-
-            OpenAIResponse response = openAIWebClient.post()
-                    .uri("/chat/completions")
-                    .body(Mono.just(request), OpenAIRequest.class)
-                    .retrieve()
-                    .bodyToMono(OpenAIResponse.class)
-                    .block();
+    // Every OpenAI call goes through here: circuit breaker, rate limiter, per-attempt timeout
+    // and retries with jittered exponential backoff that honour Retry-After.
+    // The breaker is asked once per call and told the outcome once, after retries are exhausted.
+    private <T> Mono<T> resilient(Mono<T> call, int estimatedTokens, Duration timeout) {
+        return Mono.defer(() -> {
+            boolean trial = circuitBreaker.acquirePermission();
+
+            return Mono.defer(() -> rateLimiter.acquire(estimatedTokens))
+                    .then(call.timeout(timeout))
+                    .doOnError(WebClientResponseException.class, e -> rateLimiter.update(e.getHeaders()))
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Throwable failure = signal.failure();
+                        long attempt = signal.totalRetries();
+                        if (attempt >= resilienceConfig.getMaxRetries() || !isRetryable(failure)) {
+                            return Mono.error(failure);
+                        }
+
+                        Optional<Duration> retryAfter = retryAfter(failure);
+                        retryAfter.ifPresent(rateLimiter::blockFor);
+                        Duration delay = retryAfter.orElseGet(() -> backoff(attempt));
+
+                        meterRegistry.counter("b4b.openai.retries", "reason", failureReason(failure)).increment();
+                        log.warn("OpenAI call failed ({}), retry {} of {} in {} ms", failureReason(failure),
+                                attempt + 1, resilienceConfig.getMaxRetries(), delay.toMillis());
+                        return Mono.delay(delay);
+                    })))
+                    .doOnSuccess(result -> circuitBreaker.recordSuccess())
+                    .doOnError(circuitBreaker::recordFailure)
+                    .doFinally(signal -> {
+                        if (trial) {
+                            circuitBreaker.releaseTrial();
+                        }
+                    });
+        });
+    }
+
+    private int estimatedTokens(int promptChars, int maxTokens) {
+        // OpenAI counts max_tokens against the token limit up front
+        return tokenBudgetEstimator.estimatePromptTokens(promptChars) + maxTokens;
+    }
 
-            if (response == null || response.getChoices().isEmpty()) {
-                return "Unable to generate advice at this time.";
+    private boolean isRetryable(Throwable failure) {
+        return !(failure instanceof OpenAIUnavailableException) && OpenAICircuitBreaker.isUpstreamFailure(failure);
+    }
+
+    private Duration backoff(long attempt) {
+        long base = resilienceConfig.getInitialBackoff().toMillis() << Math.min(attempt, 20);
+        long capped = Math.min(base, resilienceConfig.getMaxBackoff().toMillis());
+        double jitter = 1 + resilienceConfig.getJitter() * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Duration.ofMillis(Math.max(0, (long) (capped * jitter)));
+    }
+
+    // retry-after-ms is OpenAI specific, Retry-After is standard seconds
+    private Optional<Duration> retryAfter(Throwable failure) {
+        if (!(failure instanceof WebClientResponseException response)) {
+            return Optional.empty();
+        }
+
+        HttpHeaders headers = response.getHeaders();
+        try {
+            String millis = headers.getFirst("retry-after-ms");
+            if (millis != null) {
+                return Optional.of(Duration.ofMillis((long) Double.parseDouble(millis.trim())));
             }
+            String seconds = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (seconds != null) {
+                return Optional.of(Duration.ofSeconds(Long.parseLong(seconds.trim())));
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring unparseable Retry-After header", e);
+        }
+        return Optional.empty();
+    }
+
+    private String failureReason(Throwable failure) {
+        if (failure instanceof WebClientResponseException response) {
+            return String.valueOf(response.getStatusCode().value());
+        }
+        return failure instanceof TimeoutException ? "timeout" : "connection";
+    }
 
-            return response.getChoices().get(0).getMessage().getContent();
+    // Lenient: a truncated or partly malformed array still yields every complete element,
+    // the caller retries whatever is missing
+    private List<ParsedTransaction> readParsedTransactions(OpenAIResponse response) {
+        if (response.getChoices() == null || response.getChoices().isEmpty()) {
+            log.error("Empty response from OpenAI");
+            return List.of();
+        }
+
+        String jsonContent = response.getChoices().get(0).getMessage().getContent();
 
-        } catch (Exception e) {
-            log.error("Error generating financial advice", e);
-            return "Error generating advice. Please try again later.";
+        // usage is optional in lenient and streamed responses
+        if (response.getUsage() != null) {
+            log.info("OpenAI response: {} tokens used", response.getUsage().getTotalTokens());
         }
+        log.debug("Parsed JSON: {}", jsonContent);
+
+        JsonArrayStreamParser<ParsedTransaction> parser =
+                new JsonArrayStreamParser<>(objectMapper, ParsedTransaction.class);
+        List<ParsedTransaction> parsed = parser.feed(jsonContent);
+
+        if (!parser.isFinished() || parser.isMalformed()) {
+            log.warn("OpenAI returned an incomplete JSON array, kept {} complete elements", parsed.size());
+        }
+        return parsed;
+    }
+
+    // Same as getCategorizationSignature, for advice completions
+    public String getAdviceSignature() {
+        return openAIConfig.getModelFull() + "\n" + ADVISOR_SYSTEM_PROMPT;
+    }
+
+    // Errors (including OpenAIUnavailableException) are signalled, not turned into reply text,
+    // so callers can tell a real answer from a fallback before caching it
+    public Mono<String> generateFinancialAdvice(String spendingSummary, Double goalAmount) {
+        String userPrompt = String.format("""
+                The user wants to save %.2f CZK this month.
+                
+                Current Spending Summary:
+                %s
+                
+                Provide 3 specific, actionable recommendations.
+                """, goalAmount, spendingSummary);
+
+        OpenAIRequest request = OpenAIRequest.builder()
+                .model(openAIConfig.getModelFull())
+                .temperature(0.7)
+                .maxTokens(500)
+                .messages(List.of(
+                        OpenAIRequest.Message.builder()
+                                .role("system")
+                                .content(ADVISOR_SYSTEM_PROMPT)
+                                .build(),
+                        OpenAIRequest.Message.builder()
+                                .role("user")
+                                .content(userPrompt)
+                                .build()
+                ))
+                .build();
+
+        Mono<OpenAIResponse> call = openAIWebClient.post()
+                .uri("/chat/completions")
+                .body(Mono.just(request), OpenAIRequest.class)
+                .retrieve()
+                .toEntity(OpenAIResponse.class)
+                .doOnNext(entity -> rateLimiter.update(entity.getHeaders()))
+                .mapNotNull(HttpEntity::getBody);
+        int promptChars = ADVISOR_SYSTEM_PROMPT.length() + userPrompt.length();
+
+        return resilient(call, estimatedTokens(promptChars, request.getMaxTokens()), resilienceConfig.getAdviceTimeout())
+                .doOnSubscribe(subscription -> log.info("Requesting financial advice from OpenAI"))
+                .filter(response -> response.getChoices() != null && !response.getChoices().isEmpty())
+                .mapNotNull(response -> response.getChoices().get(0).getMessage().getContent())
+                .switchIfEmpty(Mono.error(new IllegalStateException("OpenAI returned no advice")));
     }
 
     private String buildBatchPrompt(List<RawTransaction> rawTransactions) {
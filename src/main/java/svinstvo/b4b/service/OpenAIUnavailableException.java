@@ -0,0 +1,9 @@
+package svinstvo.b4b.service;
+
+// Raised instead of calling OpenAI while the circuit breaker is open
+public class OpenAIUnavailableException extends RuntimeException {
+
+    public OpenAIUnavailableException(String message) {
+        super(message);
+    }
+}
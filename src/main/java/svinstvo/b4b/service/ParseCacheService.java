@@ -0,0 +1,157 @@
+package svinstvo.b4b.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import svinstvo.b4b.config.ParseCacheConfig;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.ParseCacheEntry;
+import svinstvo.b4b.model.RawTransaction;
+import svinstvo.b4b.repository.ParseCacheRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Two-tier cache of categorization results: Caffeine (W-TinyLFU) in front of the parse_cache table.
+// Keys include the prompt/model signature, so changing either invalidates every entry.
+@Service
+@Slf4j
+public class ParseCacheService {
+
+    private final ParseCacheRepository parseCacheRepository;
+    private final OpenAIService openAIService;
+    private final TokenBudgetEstimator tokenBudgetEstimator;
+    private final ParseCacheConfig parseCacheConfig;
+    private final Cache<String, ParsedTransaction> memoryCache;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+    private final Counter tokensSaved;
+    private final Counter cacheMessages;
+
+    public ParseCacheService(ParseCacheRepository parseCacheRepository,
+                             OpenAIService openAIService,
+                             TokenBudgetEstimator tokenBudgetEstimator,
+                             ParseCacheConfig parseCacheConfig,
+                             MeterRegistry meterRegistry) {
+        this.parseCacheRepository = parseCacheRepository;
+        this.openAIService = openAIService;
+        this.tokenBudgetEstimator = tokenBudgetEstimator;
+        this.parseCacheConfig = parseCacheConfig;
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumSize(parseCacheConfig.getMaxSize())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, memoryCache, "parse-cache");
+        this.memoryHits = meterRegistry.counter("b4b.parse.cache.requests", "tier", "memory", "result", "hit");
+        this.databaseHits = meterRegistry.counter("b4b.parse.cache.requests", "tier", "database", "result", "hit");
+        this.misses = meterRegistry.counter("b4b.parse.cache.requests", "tier", "none", "result", "miss");
+        this.tokensSaved = meterRegistry.counter("b4b.parse.cache.tokens.saved");
+        this.cacheMessages = meterRegistry.counter("b4b.categorization.messages", "path", "cache");
+        Gauge.builder("b4b.parse.cache.hit.ratio", this, ParseCacheService::hitRatio)
+                .register(meterRegistry);
+    }
+
+    public Map<Long, ParsedTransaction> lookup(List<RawTransaction> rawTransactions) {
+        Map<Long, ParsedTransaction> hits = new HashMap<>();
+        if (!parseCacheConfig.isEnabled() || rawTransactions.isEmpty()) {
+            return hits;
+        }
+
+        Map<String, List<RawTransaction>> pendingByKey = new HashMap<>();
+        for (RawTransaction rawTx : rawTransactions) {
+            String key = cacheKey(TextNormalizer.normalize(rawTx.getMessageText()));
+            ParsedTransaction cached = memoryCache.getIfPresent(key);
+            if (cached != null) {
+                hits.put(rawTx.getId(), withId(cached, rawTx.getId()));
+                memoryHits.increment();
+            } else {
+                pendingByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(rawTx);
+            }
+        }
+
+        if (parseCacheConfig.isPersistent() && !pendingByKey.isEmpty()) {
+            for (ParseCacheEntry entry : parseCacheRepository.findAllById(pendingByKey.keySet())) {
+                ParsedTransaction cached = fromEntry(entry);
+                memoryCache.put(entry.getCacheKey(), cached);
+
+                for (RawTransaction rawTx : pendingByKey.remove(entry.getCacheKey())) {
+                    hits.put(rawTx.getId(), withId(cached, rawTx.getId()));
+                    databaseHits.increment();
+                }
+            }
+        }
+
+        pendingByKey.values().forEach(missed -> misses.increment(missed.size()));
+
+        if (!hits.isEmpty()) {
+            cacheMessages.increment(hits.size());
+            tokensSaved.increment(hits.size() * tokenBudgetEstimator.getAverageTokensPerMessage());
+            log.debug("Parse cache resolved {} of {} transactions", hits.size(), rawTransactions.size());
+        }
+        return hits;
+    }
+
+    @Transactional
+    public void store(List<RawTransaction> rawTransactions, Map<Long, ParsedTransaction> resultsById) {
+        if (!parseCacheConfig.isEnabled()) {
+            return;
+        }
+
+        for (RawTransaction rawTx : rawTransactions) {
+            ParsedTransaction parsed = resultsById.get(rawTx.getId());
+            if (parsed == null) {
+                continue;
+            }
+
+            String normalizedText = TextNormalizer.normalize(rawTx.getMessageText());
+            String key = cacheKey(normalizedText);
+            memoryCache.put(key, withId(parsed, null));
+
+            if (parseCacheConfig.isPersistent()) {
+                parseCacheRepository.insertIfAbsent(key, normalizedText, parsed.getItemName(), parsed.getAmount(),
+                        parsed.getCurrency(), parsed.getCategory(), parsed.getSentimentTag());
+            }
+        }
+    }
+
+    private String cacheKey(String normalizedText) {
+        return CacheKeys.sha256(openAIService.getCategorizationSignature(), normalizedText);
+    }
+
+    private ParsedTransaction withId(ParsedTransaction parsed, Long id) {
+        return ParsedTransaction.builder()
+                .id(id)
+                .itemName(parsed.getItemName())
+                .amount(parsed.getAmount())
+                .currency(parsed.getCurrency())
+                .category(parsed.getCategory())
+                .sentimentTag(parsed.getSentimentTag())
+                .build();
+    }
+
+    private ParsedTransaction fromEntry(ParseCacheEntry entry) {
+        return ParsedTransaction.builder()
+                .itemName(entry.getItemName())
+                .amount(entry.getAmount())
+                .currency(entry.getCurrency())
+                .category(entry.getCategory())
+                .sentimentTag(entry.getSentimentTag())
+                .build();
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + databaseHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0.0 : hits / total;
+    }
+}
@@ -0,0 +1,85 @@
+package svinstvo.b4b.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.PartitioningConfig;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+import svinstvo.b4b.repository.TransactionPartitionRepository;
+
+import java.time.YearMonth;
+import java.util.List;
+
+// Keeps monthly transactions partitions created ahead of time and detaches the ones past retention.
+// Not transactional: each DDL statement commits on its own so one failure does not undo the rest.
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PartitionMaintenanceService {
+
+    private final TransactionPartitionRepository partitionRepository;
+    private final SpendingRollupRepository spendingRollupRepository;
+    private final PartitioningConfig partitioningConfig;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${b4b.partitioning.maintenance-cron:0 15 3 * * *}")
+    public void maintain() {
+        createUpcoming(YearMonth.now());
+        archive(YearMonth.now());
+    }
+
+    private void createUpcoming(YearMonth current) {
+        for (int i = 0; i <= partitioningConfig.getPremakeMonths(); i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                partitionRepository.createMonth(month);
+            } catch (DataAccessException e) {
+                // Usually rows for that month already sit in transactions_default
+                log.error("Could not create transactions partition for {}", month, e);
+            }
+        }
+    }
+
+    // Detached months drop out of transaction queries; their rollup rows are frozen first,
+    // so range reports keep them and the nightly rebuild leaves them alone
+    private void archive(YearMonth current) {
+        int archiveAfterMonths = partitioningConfig.getArchiveAfterMonths();
+        if (archiveAfterMonths <= 0) {
+            return;
+        }
+
+        YearMonth cutoff = current.minusMonths(archiveAfterMonths);
+        List<String> expired = partitionRepository.findAttachedPartitions().stream()
+                .filter(partition -> TransactionPartitionRepository.monthOf(partition)
+                        .filter(month -> month.isBefore(cutoff))
+                        .isPresent())
+                .toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        try {
+            spendingRollupRepository.freezeBefore(cutoff.atDay(1));
+        } catch (DataAccessException e) {
+            log.error("Could not freeze spending rollup before {}, keeping partitions attached", cutoff, e);
+            return;
+        }
+
+        for (String partition : expired) {
+            try {
+                partitionRepository.detach(partition);
+                log.info("Detached transactions partition {} (older than {})", partition, cutoff);
+            } catch (DataAccessException e) {
+                log.error("Could not detach transactions partition {}", partition, e);
+            }
+        }
+    }
+}
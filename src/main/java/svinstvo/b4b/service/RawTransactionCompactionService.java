@@ -0,0 +1,69 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.CompactionConfig;
+import svinstvo.b4b.repository.RawTransactionArchiveRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+// Moves payloads of old processed messages into raw_transactions_archive in small, throttled chunks.
+// Not transactional: every chunk commits on its own so row locks are held for one chunk only.
+@Service
+@Slf4j
+public class RawTransactionCompactionService {
+
+    private final RawTransactionArchiveRepository archiveRepository;
+    private final CompactionConfig compactionConfig;
+    private final Counter compactedRows;
+
+    public RawTransactionCompactionService(RawTransactionArchiveRepository archiveRepository,
+                                           CompactionConfig compactionConfig,
+                                           MeterRegistry meterRegistry) {
+        this.archiveRepository = archiveRepository;
+        this.compactionConfig = compactionConfig;
+        this.compactedRows = meterRegistry.counter("b4b.compaction.rows");
+    }
+
+    @Scheduled(cron = "${b4b.compaction.cron:0 45 3 * * *}")
+    public void compact() {
+        if (!compactionConfig.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minus(compactionConfig.getRetention());
+        long start = System.currentTimeMillis();
+        long afterId = 0;
+        int total = 0;
+        int chunks = 0;
+
+        try {
+            while (chunks < compactionConfig.getMaxChunksPerRun()) {
+                List<Long> ids = archiveRepository.compactChunk(afterId, cutoff, compactionConfig.getChunkSize());
+                if (ids.isEmpty()) {
+                    break;
+                }
+                chunks++;
+                total += ids.size();
+                compactedRows.increment(ids.size());
+                afterId = Collections.max(ids);
+
+                Thread.sleep(compactionConfig.getChunkPause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Compaction interrupted after {} rows", total);
+            return;
+        }
+
+        if (total > 0) {
+            log.info("Compacted {} raw transactions received before {} in {} chunks, {} ms",
+                    total, cutoff, chunks, System.currentTimeMillis() - start);
+        }
+    }
+}
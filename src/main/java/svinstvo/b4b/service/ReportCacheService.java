@@ -0,0 +1,92 @@
+package svinstvo.b4b.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import svinstvo.b4b.config.ReportingConfig;
+import svinstvo.b4b.event.RawTransactionsIngestedEvent;
+import svinstvo.b4b.event.TransactionsPersistedEvent;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Rendered report snapshots per chat. Entries are dropped once new raw messages or categorized
+// transactions for the chat are committed; the TTL only catches changes made outside the app.
+@Service
+@Slf4j
+public class ReportCacheService {
+
+    public enum ReportType {
+        QUICK_STATS, DETAILED_REPORT, SYSTEM_STATUS
+    }
+
+    // period is the first day the report covers, so a new month never serves last month's snapshot.
+    // generation is the chat's generation when the load started: a load that read the data before a
+    // commit lands under the old generation, which no reader asks for any more.
+    private record ReportKey(long chatId, long generation, ReportType type, LocalDate period) {
+    }
+
+    private final ReportingConfig reportingConfig;
+    private final Cache<ReportKey, String> snapshots;
+    // Bounded like the snapshots. Every value comes from one counter, so a chat whose entry was
+    // evicted starts on a number no old snapshot key carries
+    private final Cache<Long, Long> generations;
+    private final AtomicLong nextGeneration = new AtomicLong();
+
+    public ReportCacheService(ReportingConfig reportingConfig, MeterRegistry meterRegistry) {
+        this.reportingConfig = reportingConfig;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(reportingConfig.getCacheMaxSize())
+                .expireAfterWrite(reportingConfig.getCacheTtl())
+                .recordStats()
+                .build();
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(reportingConfig.getCacheMaxSize())
+                .expireAfterAccess(reportingConfig.getCacheTtl())
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "report-cache");
+        Gauge.builder("b4b.report.cache.hit.ratio", snapshots, cache -> cache.stats().hitRate())
+                .register(meterRegistry);
+    }
+
+    // Concurrent misses for the same key share one load
+    public String get(long chatId, ReportType type, LocalDate period, Supplier<String> loader) {
+        if (!reportingConfig.isCacheEnabled()) {
+            return loader.get();
+        }
+        long generation = generations.get(chatId, id -> nextGeneration.incrementAndGet());
+        return snapshots.get(new ReportKey(chatId, generation, type, period), key -> loader.get());
+    }
+
+    // Pending and message counts change as soon as raw messages land
+    @EventListener
+    public void onIngested(RawTransactionsIngestedEvent event) {
+        invalidate(event.chatIds());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPersisted(TransactionsPersistedEvent event) {
+        invalidate(event.chatIds());
+    }
+
+    private void invalidate(Set<Long> chatIds) {
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        // A chat without an entry has no load in flight that could be stale
+        chatIds.forEach(chatId -> generations.asMap()
+                .computeIfPresent(chatId, (id, generation) -> nextGeneration.incrementAndGet()));
+        snapshots.asMap().keySet().removeIf(key -> chatIds.contains(key.chatId()));
+        log.debug("Invalidated report snapshots for chats {}", chatIds);
+    }
+}
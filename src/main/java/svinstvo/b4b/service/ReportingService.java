@@ -3,37 +3,50 @@ package svinstvo.b4b.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import svinstvo.b4b.repository.RawTransactionRepository;
-import svinstvo.b4b.repository.TransactionRepository;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+import svinstvo.b4b.repository.StatsRepository;
+import svinstvo.b4b.service.ReportCacheService.ReportType;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ReportingService {
 
-    private final TransactionRepository transactionRepository;
-    private final RawTransactionRepository rawTransactionRepository;
-    private final OpenAIService openAIService;
+    private final SpendingRollupRepository spendingRollupRepository;
+    private final StatsRepository statsRepository;
+    private final ReportCacheService reportCacheService;
+    private final AdviceCacheService adviceCacheService;
 
-    public String generateQuickStats() {
+    public String generateQuickStats(Long chatId) {
+        return reportCacheService.get(chatId, ReportType.QUICK_STATS, currentMonth(),
+                () -> renderQuickStats(chatId));
+    }
+
+    public String generateDetailedReport(Long chatId) {
+        return reportCacheService.get(chatId, ReportType.DETAILED_REPORT, currentMonth(),
+                () -> renderDetailedReport(chatId));
+    }
+
+    public String getSystemStatus(Long chatId) {
+        return reportCacheService.get(chatId, ReportType.SYSTEM_STATUS, null,
+                () -> renderSystemStatus(chatId));
+    }
+
+    private String renderQuickStats(Long chatId) {
         LocalDateTime startOfMonth = LocalDateTime.now()
                 .withDayOfMonth(1)
                 .withHour(0)
                 .withMinute(0)
                 .withSecond(0);
 
-        BigDecimal totalSpent = transactionRepository.sumAmountSince(startOfMonth);
-        if (totalSpent == null) {
-            totalSpent = BigDecimal.ZERO;
-        }
-
-        Long transactionCount = transactionRepository.countTransactionsSince(startOfMonth);
-        Long pendingCount = rawTransactionRepository.countByIsProcessed(false);
+        StatsRepository.ChatStats stats = statsRepository.chatStatsSince(chatId, startOfMonth.toLocalDate());
 
         return String.format("""
                 📊 Monthly Stats (Since %s)
@@ -43,25 +56,24 @@ public class ReportingService {
                 ⏳ Pending Processing: %d
                 """,
                 startOfMonth.toLocalDate(),
-                totalSpent.doubleValue(),
-                transactionCount,
-                pendingCount
+                stats.totalSpent().doubleValue(),
+                stats.transactionCount(),
+                stats.pendingCount()
         );
     }
 
-    public String generateDetailedReport() {
+    private String renderDetailedReport(Long chatId) {
         LocalDateTime startOfMonth = LocalDateTime.now()
                 .withDayOfMonth(1)
                 .withHour(0)
                 .withMinute(0)
                 .withSecond(0);
 
-        BigDecimal totalSpent = transactionRepository.sumAmountSince(startOfMonth);
-        if (totalSpent == null) {
-            totalSpent = BigDecimal.ZERO;
-        }
-
-        List<Object[]> topCategories = transactionRepository.findTopCategoriesSince(startOfMonth);
+        List<Object[]> topCategories = spendingRollupRepository.findTopCategoriesSince(chatId, startOfMonth.toLocalDate());
+        // Categories partition the month, so their totals add up to the monthly total
+        BigDecimal totalSpent = topCategories.stream()
+                .map(category -> (BigDecimal) category[1])
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         StringBuilder report = new StringBuilder();
         report.append("📊 Monthly Financial Report\n\n");
@@ -87,14 +99,8 @@ public class ReportingService {
         return report.toString();
     }
 
-    public String generateFinancialAdvice(Double savingsGoal) {
-        LocalDateTime startOfMonth = LocalDateTime.now()
-                .withDayOfMonth(1)
-                .withHour(0)
-                .withMinute(0)
-                .withSecond(0);
-
-        String spendingSummary = generateDetailedReport();
+    public String generateFinancialAdvice(Long chatId, Double savingsGoal) {
+        String spendingSummary = generateDetailedReport(chatId);
 
         if (savingsGoal == null) {
             savingsGoal = 5000.0; // Default goal
@@ -102,7 +108,7 @@ public class ReportingService {
 
         log.info("Generating financial advice with goal: {} CZK", savingsGoal);
 
-        String advice = openAIService.generateFinancialAdvice(spendingSummary, savingsGoal);
+        String advice = requestAdvice(chatId, spendingSummary, savingsGoal);
 
         return String.format("""
                 🎯 Savings Goal: %.2f CZK
@@ -117,16 +123,26 @@ public class ReportingService {
         );
     }
 
-    public String getSystemStatus() {
-        Long totalTransactions = transactionRepository.count();
-        Long totalRaw = rawTransactionRepository.count();
-        Long pendingCount = rawTransactionRepository.countByIsProcessed(false);
-        Long processedCount = rawTransactionRepository.countByIsProcessed(true);
+    private String requestAdvice(Long chatId, String spendingSummary, double savingsGoal) {
+        try {
+            return adviceCacheService.get(chatId, spendingSummary, savingsGoal).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof OpenAIUnavailableException unavailable) {
+                log.warn("Skipping financial advice: {}", unavailable.getMessage());
+                return "Advice is temporarily unavailable, OpenAI is not responding. Please try again in a few minutes.";
+            }
+            log.error("Error generating financial advice", e.getCause());
+            return "Error generating advice. Please try again later.";
+        }
+    }
+
+    private String renderSystemStatus(Long chatId) {
+        StatsRepository.ChatStatus status = statsRepository.chatStatus(chatId);
 
         return String.format("""
                 🤖 BudgetBot System Status
                 
-                📊 Database Stats:
+                📊 Your Data:
                 • Total Transactions: %d
                 • Total Messages Received: %d
                 • Processed: %d
@@ -134,10 +150,14 @@ public class ReportingService {
                 
                 ✅ System: Operational
                 """,
-                totalTransactions,
-                totalRaw,
-                processedCount,
-                pendingCount
+                status.transactionCount(),
+                status.rawCount(),
+                status.processedCount(),
+                status.pendingCount()
         );
     }
-}
\ No newline at end of file
+
+    private static LocalDate currentMonth() {
+        return LocalDate.now().withDayOfMonth(1);
+    }
+}
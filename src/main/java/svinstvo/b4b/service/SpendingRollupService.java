@@ -0,0 +1,26 @@
+package svinstvo.b4b.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SpendingRollupService {
+
+    private final SpendingRollupRepository spendingRollupRepository;
+
+    // Rollups are kept current by BatchPersistenceService; this only repairs drift from manual
+    // edits or deletes in transactions. Set b4b.rollup.rebuild-cron to "-" to disable.
+    @Scheduled(cron = "${b4b.rollup.rebuild-cron:0 30 3 * * *}")
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int rows = spendingRollupRepository.rebuild();
+        log.info("Rebuilt spending_daily_rollup: {} rows in {} ms", rows, System.currentTimeMillis() - start);
+    }
+}
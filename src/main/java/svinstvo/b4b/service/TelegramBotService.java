@@ -4,9 +4,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import svinstvo.b4b.config.TelegramConfig;
+import svinstvo.b4b.config.TelegramDispatcherConfig;
+import svinstvo.b4b.service.BatchProcessorService.DrainResult;
+import svinstvo.b4b.service.CommandJobRegistry.JobType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
@@ -16,17 +26,28 @@ public class TelegramBotService extends TelegramLongPollingBot {
     private final IngestionService ingestionService;
     private final BatchProcessorService batchProcessorService;
     private final ReportingService reportingService;
+    private final TelegramUpdateDispatcher updateDispatcher;
+    private final CommandJobRegistry commandJobRegistry;
+    private final TelegramDispatcherConfig dispatcherConfig;
+    // Replies to group-committed messages, kept off the ingestion flusher thread
+    private final Executor replyExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     public TelegramBotService(
             TelegramConfig telegramConfig,
             IngestionService ingestionService,
             BatchProcessorService batchProcessorService,
-            ReportingService reportingService) {
+            ReportingService reportingService,
+            TelegramUpdateDispatcher updateDispatcher,
+            CommandJobRegistry commandJobRegistry,
+            TelegramDispatcherConfig dispatcherConfig) {
         super(telegramConfig.getToken());
         this.telegramConfig = telegramConfig;
         this.ingestionService = ingestionService;
         this.batchProcessorService = batchProcessorService;
         this.reportingService = reportingService;
+        this.updateDispatcher = updateDispatcher;
+        this.commandJobRegistry = commandJobRegistry;
+        this.dispatcherConfig = dispatcherConfig;
     }
 
     @PostConstruct
@@ -41,46 +62,69 @@ public class TelegramBotService extends TelegramLongPollingBot {
         return telegramConfig.getUsername();
     }
 
+    // Called on the polling handler thread; the actual work runs on the dispatcher's per-chat lanes
     @Override
     public void onUpdateReceived(Update update) {
+        dispatchUpdate(update);
+    }
+
+    public CompletableFuture<Void> dispatchUpdate(Update update) {
+        return updateDispatcher.dispatch(update, this::handleUpdate, this::rejectUpdate);
+    }
+
+    private CompletionStage<?> handleUpdate(Update update) {
         log.info("📨 Received update: {}", update.getUpdateId());
 
         if (!update.hasMessage()) {
             log.debug("Update has no message, skipping");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         if (!update.getMessage().hasText()) {
             log.debug("Message has no text, skipping");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        try {
-            String messageText = update.getMessage().getText();
-            Long chatId = update.getMessage().getChatId();
+        String messageText = update.getMessage().getText();
+        Long chatId = update.getMessage().getChatId();
 
+        try {
             log.info("💬 Message from chat {}: '{}'", chatId, messageText);
 
             // Handle commands
             if (ingestionService.isCommand(messageText)) {
                 handleCommand(chatId, messageText);
-            } else {
-                // Save as expense entry
-                ingestionService.saveRawMessage(update.getMessage());
-                sendMessage(chatId, "✅ Expense logged! Use /sync to process immediately.");
+                return CompletableFuture.completedFuture(null);
             }
 
-            // Update last processed update ID
-            ingestionService.updateLastUpdateId(update.getUpdateId());
+            // Save as expense entry; the chat moves on while the group commit is pending,
+            // the update is only acknowledged once the row is durable
+            return ingestionService.saveRawMessage(update.getMessage())
+                    .handleAsync((stored, error) -> {
+                        if (error != null) {
+                            log.error("❌ Error saving update {}", update.getUpdateId(), error);
+                            sendMessage(chatId, "❌ Sorry, I encountered an error. Please try again.");
+                        } else {
+                            sendMessage(chatId, "✅ Expense logged! Use /sync to process immediately.");
+                        }
+                        return null;
+                    }, replyExecutor);
 
         } catch (Exception e) {
             log.error("❌ Error processing update {}", update.getUpdateId(), e);
             try {
-                sendMessage(update.getMessage().getChatId(),
-                        "❌ Sorry, I encountered an error. Please try again.");
+                sendMessage(chatId, "❌ Sorry, I encountered an error. Please try again.");
             } catch (Exception ex) {
                 log.error("Failed to send error message", ex);
             }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void rejectUpdate(Update update) {
+        if (update.hasMessage()) {
+            sendMessage(update.getMessage().getChatId(),
+                    "⚠️ Too many messages at once, this one was dropped. Please resend it in a moment.");
         }
     }
 
@@ -127,21 +171,52 @@ public class TelegramBotService extends TelegramLongPollingBot {
         sendMessage(chatId, welcomeMessage);
     }
 
+    // Runs as a background job; the placeholder reply is edited with progress and the result
     private void handleSync(Long chatId) {
-        sendMessage(chatId, "⏳ Processing pending transactions...");
+        if (!commandJobRegistry.submit(chatId, JobType.SYNC, () -> runSync(chatId))) {
+            sendMessage(chatId, "⏳ A sync is already running, its message will update when it's done.");
+        }
+    }
+
+    // Joins the node's shared drain; the reply only counts this chat's rows
+    private void runSync(Long chatId) {
+        ProgressMessage progress = startProgress(chatId, "⏳ Processing pending transactions...");
 
         try {
-            batchProcessorService.processPendingTransactions();
-            sendMessage(chatId, "✅ All pending transactions processed!");
+            long pending = batchProcessorService.countPending(chatId);
+            if (pending == 0) {
+                progress.finish("✅ No pending transactions.");
+                return;
+            }
+
+            DrainResult result = batchProcessorService.processPendingTransactions((drainedChatId, done) -> {
+                if (drainedChatId == chatId) {
+                    replyExecutor.execute(() -> progress.update(String.format(
+                            "⏳ Processing pending transactions... %d/%d", done, Math.max(done, pending))));
+                }
+            });
+            progress.finish(syncSummary(result, chatId, batchProcessorService.countPending(chatId)));
         } catch (Exception e) {
             log.error("Error during sync", e);
-            sendMessage(chatId, "❌ Error processing transactions. Check logs.");
+            progress.finish("❌ Error processing transactions. Check logs.");
         }
     }
 
+    private static String syncSummary(DrainResult result, long chatId, long remaining) {
+        int processed = result.processedFor(chatId);
+        if (remaining > 0 && (result.circuitOpen() || result.released() > 0)) {
+            return String.format("⚠️ Processed %d transactions. AI categorization is unavailable right now, "
+                    + "%d are still pending and will be retried automatically.", processed, remaining);
+        }
+        if (remaining > 0) {
+            return String.format("✅ Processed %d transactions, %d still pending.", processed, remaining);
+        }
+        return String.format("✅ All pending transactions processed! (%d)", processed);
+    }
+
     private void handleStats(Long chatId) {
         try {
-            String stats = reportingService.generateQuickStats();
+            String stats = reportingService.generateQuickStats(chatId);
             sendMessage(chatId, stats);
         } catch (Exception e) {
             log.error("Error generating stats", e);
@@ -150,20 +225,25 @@ public class TelegramBotService extends TelegramLongPollingBot {
     }
 
     private void handleAdvice(Long chatId) {
-        sendMessage(chatId, "🤔 Analyzing your spending... This may take a moment.");
+        if (!commandJobRegistry.submit(chatId, JobType.ADVICE, () -> runAdvice(chatId))) {
+            sendMessage(chatId, "🤔 Still working on your advice, it will appear above shortly.");
+        }
+    }
+
+    private void runAdvice(Long chatId) {
+        ProgressMessage progress = startProgress(chatId, "🤔 Analyzing your spending... This may take a moment.");
 
         try {
-            String advice = reportingService.generateFinancialAdvice(5000.0);
-            sendMessage(chatId, advice);
+            progress.finish(reportingService.generateFinancialAdvice(chatId, 5000.0));
         } catch (Exception e) {
             log.error("Error generating advice", e);
-            sendMessage(chatId, "❌ Error generating advice. Please try again later.");
+            progress.finish("❌ Error generating advice. Please try again later.");
         }
     }
 
     private void handleStatus(Long chatId) {
         try {
-            String status = reportingService.getSystemStatus();
+            String status = reportingService.getSystemStatus(chatId);
             sendMessage(chatId, status);
         } catch (Exception e) {
             log.error("Error getting status", e);
@@ -189,16 +269,81 @@ public class TelegramBotService extends TelegramLongPollingBot {
         sendMessage(chatId, helpMessage);
     }
 
-    private void sendMessage(Long chatId, String text) {
+    // Null when the message could not be sent
+    private Message sendMessage(Long chatId, String text) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
         message.setText(text);
 
         try {
-            execute(message);
+            Message sent = execute(message);
             log.debug("✉️ Sent message to chat {}", chatId);
+            return sent;
         } catch (TelegramApiException e) {
             log.error("❌ Error sending message to chat {}", chatId, e);
+            return null;
+        }
+    }
+
+    private boolean editMessage(Long chatId, Integer messageId, String text) {
+        EditMessageText edit = EditMessageText.builder()
+                .chatId(chatId.toString())
+                .messageId(messageId)
+                .text(text)
+                .build();
+
+        try {
+            execute(edit);
+            return true;
+        } catch (TelegramApiException e) {
+            log.warn("Could not edit message {} in chat {}: {}", messageId, chatId, e.getMessage());
+            return false;
+        }
+    }
+
+    private ProgressMessage startProgress(Long chatId, String text) {
+        Message placeholder = sendMessage(chatId, text);
+        return new ProgressMessage(chatId, placeholder != null ? placeholder.getMessageId() : null, text);
+    }
+
+    // A background command's reply, edited in place. Edits are serialized and rate-limited,
+    // and once finish() ran no late progress update can overwrite the result.
+    private final class ProgressMessage {
+
+        private final Long chatId;
+        private final Integer messageId;
+        private String text;
+        private long lastEditNanos = System.nanoTime();
+        private boolean finished;
+
+        private ProgressMessage(Long chatId, Integer messageId, String text) {
+            this.chatId = chatId;
+            this.messageId = messageId;
+            this.text = text;
+        }
+
+        synchronized void update(String newText) {
+            long now = System.nanoTime();
+            if (finished || messageId == null || newText.equals(text)
+                    || now - lastEditNanos < dispatcherConfig.getProgressEditInterval().toNanos()) {
+                return;
+            }
+            if (editMessage(chatId, messageId, newText)) {
+                text = newText;
+            }
+            lastEditNanos = now;
+        }
+
+        // Falls back to a new message when the placeholder is missing or can't be edited
+        synchronized void finish(String result) {
+            finished = true;
+            if (result.equals(text)) {
+                return;
+            }
+            if (messageId == null || !editMessage(chatId, messageId, result)) {
+                sendMessage(chatId, result);
+            }
+            text = result;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import svinstvo.b4b.config.TelegramDispatcherConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Runs update handlers on virtual threads, one lane per chat: updates of a chat are handled
+// strictly in order, different chats in parallel. A handler may return an unfinished stage (e.g. a
+// pending group commit) to let the chat move on; the update is acknowledged, and the checkpoint
+// moves past it, only once that stage and every earlier update have completed.
+// The polling offset is separate and moves past every accepted update, so one slow chat never
+// holds getUpdates at a full window of already-received updates.
+@Service
+@Slf4j
+public class TelegramUpdateDispatcher {
+
+    // Updates that carry no chat share one lane
+    private static final long NO_CHAT = 0L;
+
+    private final TelegramDispatcherConfig dispatcherConfig;
+    private final IngestionService ingestionService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+    private final Timer handleTimer;
+    private final Counter shedCounter;
+
+    // Guarded by this
+    private final NavigableSet<Integer> inFlight = new TreeSet<>();
+    // Highest update handed to a lane; the next poll starts after it
+    private int highestReceived;
+    // Everything up to here is handled; this is what gets checkpointed and resumed from
+    private int ackedUpdateId;
+
+    public TelegramUpdateDispatcher(TelegramDispatcherConfig dispatcherConfig,
+                                    IngestionService ingestionService,
+                                    MeterRegistry meterRegistry) {
+        this.dispatcherConfig = dispatcherConfig;
+        this.ingestionService = ingestionService;
+        this.handleTimer = meterRegistry.timer("b4b.telegram.update.latency");
+        this.shedCounter = meterRegistry.counter("b4b.telegram.updates.shed");
+        Gauge.builder("b4b.telegram.updates.in.flight", this, TelegramUpdateDispatcher::inFlightCount)
+                .register(meterRegistry);
+        Gauge.builder("b4b.telegram.chat.lanes", lanes, Map::size)
+                .register(meterRegistry);
+    }
+
+    public synchronized void resumeFrom(int updateId) {
+        ackedUpdateId = Math.max(ackedUpdateId, updateId);
+        highestReceived = Math.max(highestReceived, updateId);
+        log.info("Resuming Telegram updates after update ID {}", ackedUpdateId);
+    }
+
+    // getUpdates offset. Telegram drops updates below it once the next poll is sent; a node that
+    // dies before then gets them again, after a restart from the checkpoint
+    public synchronized int nextOffset() {
+        return highestReceived + 1;
+    }
+
+    public synchronized int getAckedUpdateId() {
+        return ackedUpdateId;
+    }
+
+    // Drops updates that were already received and registers the rest as in flight
+    public synchronized List<Update> acceptNew(List<Update> updates) {
+        List<Update> accepted = new ArrayList<>();
+        for (Update update : updates) {
+            if (update.getUpdateId() > highestReceived) {
+                highestReceived = update.getUpdateId();
+                inFlight.add(update.getUpdateId());
+                accepted.add(update);
+            }
+        }
+        return accepted;
+    }
+
+    // The returned future completes once the update is handled (or shed), i.e. when it may be acknowledged
+    public CompletableFuture<Void> dispatch(Update update, Function<Update, CompletionStage<?>> handler,
+                                            Consumer<Update> onShed) {
+        long chatId = chatId(update);
+        CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        Runnable task = () -> run(update, handler, acknowledged);
+
+        boolean[] accepted = new boolean[1];
+        lanes.compute(chatId, (id, lane) -> {
+            ChatLane target = lane != null ? lane : new ChatLane(id);
+            accepted[0] = target.offer(task);
+            return target;
+        });
+
+        if (!accepted[0]) {
+            shedCounter.increment();
+            log.warn("Chat {} has {} updates queued, shedding update {}",
+                    chatId, dispatcherConfig.getMaxQueuePerChat(), update.getUpdateId());
+            executor.execute(() -> run(update, shed -> {
+                onShed.accept(shed);
+                return CompletableFuture.completedFuture(null);
+            }, acknowledged));
+        }
+        return acknowledged;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(dispatcherConfig.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} Telegram updates still running at shutdown, they will be re-delivered", inFlightCount());
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(Update update, Function<Update, CompletionStage<?>> handler,
+                     CompletableFuture<Void> acknowledged) {
+        Timer.Sample sample = Timer.start();
+        CompletionStage<?> handled;
+        try {
+            handled = handler.apply(update);
+        } catch (Exception e) {
+            handled = CompletableFuture.failedFuture(e);
+        }
+
+        handled.whenComplete((result, error) -> {
+            if (error != null) {
+                log.error("Unhandled error in handler for update {}", update.getUpdateId(), error);
+            }
+            sample.stop(handleTimer);
+            complete(update.getUpdateId());
+            acknowledged.complete(null);
+        });
+    }
+
+    // Only polled updates (registered by acceptNew) move the offset; webhook updates are acknowledged
+    // by the HTTP response instead
+    private synchronized void complete(int updateId) {
+        if (!inFlight.remove(updateId)) {
+            return;
+        }
+        int acked = inFlight.isEmpty() ? highestReceived : inFlight.first() - 1;
+
+        if (acked > ackedUpdateId) {
+            ackedUpdateId = acked;
+            ingestionService.updateLastUpdateId(acked);
+        }
+    }
+
+    private synchronized int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static long chatId(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return NO_CHAT;
+    }
+
+    // Bounded FIFO drained by at most one virtual thread at a time
+    private final class ChatLane {
+
+        private final long chatId;
+        private final Deque<Runnable> queue = new ArrayDeque<>();
+        private boolean draining;
+
+        private ChatLane(long chatId) {
+            this.chatId = chatId;
+        }
+
+        private synchronized boolean offer(Runnable task) {
+            if (queue.size() >= dispatcherConfig.getMaxQueuePerChat()) {
+                return false;
+            }
+            queue.add(task);
+            if (!draining) {
+                draining = true;
+                executor.execute(this::drain);
+            }
+            return true;
+        }
+
+        private void drain() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = queue.poll();
+                }
+                if (task == null && retire()) {
+                    return;
+                }
+                if (task != null) {
+                    task.run();
+                }
+            }
+        }
+
+        // Removal goes through lanes.compute like dispatch does, so a chat never has two lanes
+        private boolean retire() {
+            boolean[] retired = new boolean[1];
+            lanes.compute(chatId, (id, lane) -> {
+                synchronized (this) {
+                    if (!queue.isEmpty()) {
+                        return lane;
+                    }
+                    draining = false;
+                    retired[0] = true;
+                    return lane == this ? null : lane;
+                }
+            });
+            return retired[0];
+        }
+    }
+}
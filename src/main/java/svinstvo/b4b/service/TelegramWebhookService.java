@@ -0,0 +1,75 @@
+package svinstvo.b4b.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import svinstvo.b4b.config.TelegramConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+
+// Webhook mode: Telegram POSTs each update to the controller, any node behind the load balancer
+// can take it. Updates go through the same dispatcher and handlers as long polling.
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "webhook")
+public class TelegramWebhookService {
+
+    private final TelegramConfig telegramConfig;
+    private final TelegramBotService telegramBotService;
+
+    // The webhook path is public; without a secret anyone could post fake updates
+    @PostConstruct
+    public void requireSecret() {
+        if (telegramConfig.getWebhookSecret() == null || telegramConfig.getWebhookSecret().isBlank()) {
+            throw new IllegalStateException("telegram.bot.webhook-secret must be set when telegram.bot.mode=webhook");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerWebhook() {
+        if (telegramConfig.getWebhookUrl() == null || telegramConfig.getWebhookUrl().isBlank()) {
+            log.info("telegram.bot.webhook-url is not set, serving {} without registering it with Telegram",
+                    telegramConfig.getWebhookPath());
+            return;
+        }
+
+        String url = telegramConfig.getWebhookUrl() + telegramConfig.getWebhookPath();
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(url)
+                .secretToken(telegramConfig.getWebhookSecret())
+                .maxConnections(telegramConfig.getWebhookMaxConnections())
+                .build();
+
+        try {
+            telegramBotService.execute(setWebhook);
+            log.info("✅ Telegram webhook registered: {}", url);
+        } catch (TelegramApiException e) {
+            log.error("❌ Failed to register Telegram webhook {}", url, e);
+            throw new RuntimeException("Could not register Telegram webhook", e);
+        }
+    }
+
+    public boolean isAuthorized(String secretToken) {
+        String expected = telegramConfig.getWebhookSecret();
+        if (expected == null || expected.isBlank()) {
+            return false;
+        }
+        return secretToken != null && MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), secretToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Completes once the update is handled, so a node dying mid-update makes Telegram redeliver it
+    public CompletableFuture<Void> receive(Update update) {
+        return telegramBotService.dispatchUpdate(update);
+    }
+}
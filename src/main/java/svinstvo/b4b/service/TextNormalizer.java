@@ -0,0 +1,26 @@
+package svinstvo.b4b.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Message text clean-up shared by the local parser and the parse cache, so the same
+// message always yields the same item name and the same cache key
+final class TextNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern EDGE_PUNCTUATION = Pattern.compile("^[\\s\\p{Punct}]+|[\\s\\p{Punct}]+$");
+
+    private TextNormalizer() {
+    }
+
+    // Strips leading/trailing punctuation and collapses runs of whitespace
+    static String clean(String text) {
+        return WHITESPACE.matcher(EDGE_PUNCTUATION.matcher(text).replaceAll("")).replaceAll(" ");
+    }
+
+    // clean() after NFKC and lower-casing: the form cache keys are built from
+    static String normalize(String text) {
+        return clean(Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,154 @@
+package svinstvo.b4b.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import svinstvo.b4b.config.TokenBudgetConfig;
+import svinstvo.b4b.dto.OpenAIResponse;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Learns token costs from OpenAIResponse.Usage and packs categorization batches to a token/latency budget
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class TokenBudgetEstimator {
+
+    private static final double SMOOTHING = 0.2;
+    private static final int RESPONSE_OVERHEAD_TOKENS = 32;
+
+    private final TokenBudgetConfig tokenBudgetConfig;
+
+    // Starting points until the first responses come back
+    private double charsPerPromptToken = 4.0;
+    private double inputTokensPerItem = 20.0;
+    private double completionTokensPerItem = 40.0;
+    private double completionTokensPerSecond = 60.0;
+
+    private long totalMessages;
+    private long totalTokens;
+
+    public List<List<RawTransaction>> pack(List<RawTransaction> rawTransactions) {
+        int inputBudget = tokenBudgetConfig.getTargetInputTokens();
+        int outputBudget = outputBudget();
+
+        List<List<RawTransaction>> batches = new ArrayList<>();
+        List<RawTransaction> current = new ArrayList<>();
+        int currentInput = 0;
+        int currentOutput = 0;
+
+        for (RawTransaction rawTx : rawTransactions) {
+            int input = estimateInputTokens(rawTx);
+            int output = estimateOutputTokens(input);
+
+            if (!current.isEmpty() && (currentInput + input > inputBudget || currentOutput + output > outputBudget)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentInput = 0;
+                currentOutput = 0;
+            }
+
+            current.add(rawTx);
+            currentInput += input;
+            currentOutput += output;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+
+        if (batches.size() > 1) {
+            log.debug("Packed {} transactions into {} batches (input budget {}, output budget {})",
+                    rawTransactions.size(), batches.size(), inputBudget, outputBudget);
+        }
+        return batches;
+    }
+
+    // Rows to claim per drain step: about one call's worth at the learned per-message averages,
+    // never below the configured batch size (pack() splits what doesn't fit)
+    public synchronized int claimSize(int minimum) {
+        int byInput = (int) (tokenBudgetConfig.getTargetInputTokens() / inputTokensPerItem);
+        int byOutput = (int) (outputBudget() / completionTokensPerItem);
+        return Math.clamp(Math.min(byInput, byOutput), minimum, Math.max(minimum, tokenBudgetConfig.getMaxClaimSize()));
+    }
+
+    public int maxTokensFor(List<RawTransaction> batch) {
+        int expected = batch.stream()
+                .mapToInt(rawTx -> estimateOutputTokens(estimateInputTokens(rawTx)))
+                .sum();
+
+        int maxTokens = (int) Math.ceil(expected * tokenBudgetConfig.getOutputHeadroom()) + RESPONSE_OVERHEAD_TOKENS;
+        return Math.clamp(maxTokens, tokenBudgetConfig.getMinOutputTokens(), tokenBudgetConfig.getMaxOutputTokens());
+    }
+
+    public synchronized void recordUsage(List<RawTransaction> batch, int promptChars, OpenAIResponse.Usage usage,
+                                         String finishReason, Duration elapsed) {
+        if (usage == null || batch.isEmpty()) {
+            return;
+        }
+
+        int items = batch.size();
+        if (usage.getPromptTokens() != null && usage.getPromptTokens() > 0) {
+            charsPerPromptToken = smooth(charsPerPromptToken, (double) promptChars / usage.getPromptTokens());
+        }
+
+        // Reference size for scaling per-item output estimates
+        double averageInput = batch.stream()
+                .mapToInt(this::estimateInputTokens)
+                .average()
+                .orElse(inputTokensPerItem);
+        inputTokensPerItem = smooth(inputTokensPerItem, averageInput);
+
+        if (usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0) {
+            double perItem = (double) usage.getCompletionTokens() / items;
+            // A response cut off at max_tokens under-reports what the batch needed
+            if ("length".equals(finishReason)) {
+                perItem *= tokenBudgetConfig.getOutputHeadroom();
+            }
+            completionTokensPerItem = smooth(completionTokensPerItem, perItem);
+
+            double seconds = elapsed.toMillis() / 1000.0;
+            if (seconds > 0) {
+                completionTokensPerSecond = smooth(completionTokensPerSecond, usage.getCompletionTokens() / seconds);
+            }
+        }
+
+        if (usage.getTotalTokens() != null) {
+            totalMessages += items;
+            totalTokens += usage.getTotalTokens();
+        }
+    }
+
+    public synchronized int estimatePromptTokens(int promptChars) {
+        return (int) Math.ceil(promptChars / charsPerPromptToken);
+    }
+
+    public synchronized double getAverageTokensPerMessage() {
+        return totalMessages == 0 ? 0.0 : (double) totalTokens / totalMessages;
+    }
+
+    private synchronized int estimateInputTokens(RawTransaction rawTx) {
+        // Matches the "ID: <id> | Text: <text>" line built by OpenAIService
+        int chars = rawTx.getMessageText().length() + 24;
+        return (int) Math.ceil(chars / charsPerPromptToken);
+    }
+
+    // Longer messages tend to produce longer item names
+    private synchronized int estimateOutputTokens(int inputTokens) {
+        double scale = Math.clamp(inputTokens / inputTokensPerItem, 0.5, 3.0);
+        return (int) Math.ceil(completionTokensPerItem * scale);
+    }
+
+    private synchronized int outputBudget() {
+        int latencyBudget = (int) (completionTokensPerSecond * tokenBudgetConfig.getTargetLatency().toSeconds());
+        int ceiling = (int) (tokenBudgetConfig.getMaxOutputTokens() / tokenBudgetConfig.getOutputHeadroom());
+        return Math.max(1, Math.min(Math.min(tokenBudgetConfig.getTargetOutputTokens(), latencyBudget), ceiling));
+    }
+
+    private static double smooth(double current, double sample) {
+        return current + SMOOTHING * (sample - current);
+    }
+}
@@ -0,0 +1,4 @@
+-- /sync reports the chat's own backlog; same partial predicate as idx_raw_transactions_pending,
+-- so this index also only holds unprocessed rows
+CREATE INDEX idx_raw_transactions_pending_chat ON raw_transactions(telegram_chat_id)
+    WHERE is_processed = false;
@@ -0,0 +1,3 @@
+-- Claim markers for the batch processor queue
+ALTER TABLE raw_transactions ADD COLUMN claimed_at TIMESTAMP;
+ALTER TABLE raw_transactions ADD COLUMN claimed_by VARCHAR(100);
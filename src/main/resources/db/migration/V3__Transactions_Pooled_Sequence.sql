@@ -0,0 +1,2 @@
+-- Hibernate's pooled optimizer reserves 50 ids per nextval, which lets inserts be JDBC-batched
+ALTER SEQUENCE transactions_id_seq INCREMENT BY 50;
@@ -0,0 +1,11 @@
+-- Categorization results keyed by sha256(normalized text + prompt/model fingerprint)
+CREATE TABLE parse_cache (
+    cache_key VARCHAR(64) PRIMARY KEY,
+    normalized_text TEXT NOT NULL,
+    item_name VARCHAR(255),
+    amount DECIMAL(10, 2),
+    currency VARCHAR(3),
+    category VARCHAR(50),
+    sentiment_tag VARCHAR(50),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,17 @@
+-- Spend per day, chat and category, maintained in the same transaction as the transactions inserts
+CREATE TABLE spending_daily_rollup (
+    day DATE NOT NULL,
+    telegram_chat_id BIGINT NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    total_amount DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    transaction_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, telegram_chat_id, category)
+);
+
+-- Backfill from existing history
+INSERT INTO spending_daily_rollup (day, telegram_chat_id, category, total_amount, transaction_count)
+SELECT CAST(t.transaction_date AS DATE), COALESCE(r.telegram_chat_id, 0), COALESCE(t.category, 'Other'),
+       COALESCE(SUM(t.amount), 0), COUNT(*)
+FROM transactions t
+LEFT JOIN raw_transactions r ON r.id = t.raw_transaction_id
+GROUP BY 1, 2, 3;
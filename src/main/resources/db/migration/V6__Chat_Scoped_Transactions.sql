@@ -0,0 +1,19 @@
+-- Carry the chat into transactions so reports can be scoped per user
+ALTER TABLE transactions ADD COLUMN telegram_chat_id BIGINT;
+
+UPDATE transactions t
+SET telegram_chat_id = r.telegram_chat_id
+FROM raw_transactions r
+WHERE r.id = t.raw_transaction_id;
+
+UPDATE transactions SET telegram_chat_id = 0 WHERE telegram_chat_id IS NULL;
+ALTER TABLE transactions ALTER COLUMN telegram_chat_id SET NOT NULL;
+
+-- Covers the chat-scoped range aggregates with index-only scans
+CREATE INDEX idx_transactions_chat_date ON transactions(telegram_chat_id, transaction_date) INCLUDE (amount, category);
+
+CREATE INDEX idx_raw_transactions_chat_processed ON raw_transactions(telegram_chat_id, is_processed);
+
+-- Chat first, so one chat's date range is a contiguous slice of the key
+ALTER TABLE spending_daily_rollup DROP CONSTRAINT spending_daily_rollup_pkey;
+ALTER TABLE spending_daily_rollup ADD PRIMARY KEY (telegram_chat_id, day, category);
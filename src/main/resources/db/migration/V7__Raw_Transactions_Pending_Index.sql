@@ -0,0 +1,9 @@
+-- The pending queue: only unprocessed rows are indexed, so the index stays the size of the backlog.
+-- id and claimed_at are included so the claim subquery and the stale-claim sweep run as index-only scans.
+-- Queries must spell the predicate as the literal "is_processed = false" for the planner to match it.
+CREATE INDEX idx_raw_transactions_pending ON raw_transactions(received_at) INCLUDE (id, claimed_at)
+    WHERE is_processed = false;
+
+-- Superseded: a boolean index with one dominant value, and a received_at index nothing else reads
+DROP INDEX IF EXISTS idx_raw_transactions_processed;
+DROP INDEX IF EXISTS idx_raw_transactions_received_at;
@@ -0,0 +1,60 @@
+-- Monthly range partitions on transaction_date, so month-to-date reports prune to one partition
+-- and vacuum/index maintenance stays bounded. PartitionMaintenanceService keeps future months created.
+
+-- Keep the id sequence alive when the old table is dropped
+ALTER SEQUENCE transactions_id_seq OWNED BY NONE;
+
+ALTER TABLE transactions RENAME TO transactions_unpartitioned;
+DROP INDEX idx_transactions_date;
+DROP INDEX idx_transactions_category;
+DROP INDEX idx_transactions_chat_date;
+
+-- The primary key has to include the partition key, so it no longer guards id on its own.
+-- No DEFAULT on id: transactions_id_seq steps by 50 for Hibernate's pooled optimizer (V3), and a
+-- plain nextval() would hand out an id inside a block Hibernate is already using.
+CREATE TABLE transactions (
+    id BIGINT NOT NULL,
+    raw_transaction_id BIGINT REFERENCES raw_transactions(id),
+    telegram_chat_id BIGINT NOT NULL,
+    item_name VARCHAR(255),
+    amount DECIMAL(10, 2),
+    currency VARCHAR(3) DEFAULT 'CZK',
+    category VARCHAR(50),
+    transaction_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    sentiment_tag VARCHAR(50),
+    PRIMARY KEY (id, transaction_date)
+) PARTITION BY RANGE (transaction_date);
+
+-- Catches rows outside every monthly partition instead of failing the insert; stays empty
+-- as long as the maintenance job creates months ahead of time
+CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+
+-- One partition per month from the oldest row through three months ahead
+DO $$
+DECLARE
+    month DATE := date_trunc('month', COALESCE(
+            (SELECT MIN(transaction_date) FROM transactions_unpartitioned), CURRENT_TIMESTAMP))::date;
+    last_month DATE := (date_trunc('month', CURRENT_TIMESTAMP) + INTERVAL '3 months')::date;
+BEGIN
+    WHILE month <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF transactions FOR VALUES FROM (%L) TO (%L)',
+                       'transactions_p' || to_char(month, 'YYYYMM'), month, (month + INTERVAL '1 month')::date);
+        month := (month + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO transactions (id, raw_transaction_id, telegram_chat_id, item_name, amount, currency, category,
+                          transaction_date, sentiment_tag)
+SELECT id, raw_transaction_id, telegram_chat_id, item_name, amount, currency, category,
+       COALESCE(transaction_date, CURRENT_TIMESTAMP), sentiment_tag
+FROM transactions_unpartitioned;
+
+DROP TABLE transactions_unpartitioned;
+ALTER SEQUENCE transactions_id_seq OWNED BY transactions.id;
+
+-- Defined on the parent, created on every partition (including future ones)
+CREATE INDEX idx_transactions_chat_date ON transactions(telegram_chat_id, transaction_date) INCLUDE (amount, category);
+CREATE INDEX idx_transactions_date ON transactions(transaction_date);
+CREATE INDEX idx_transactions_category ON transactions(category);
+
+ANALYZE transactions;
@@ -0,0 +1,22 @@
+-- Processed messages older than the retention window are moved out of the hot raw_transactions heap.
+-- The row itself stays (id, telegram_message_id, telegram_chat_id) for dedupe and the transactions FK;
+-- the payload goes into chunked, lz4-compressed archive rows.
+ALTER TABLE raw_transactions ADD COLUMN compacted_at TIMESTAMP;
+
+CREATE TABLE raw_transactions_archive (
+    id BIGSERIAL PRIMARY KEY,
+    first_id BIGINT NOT NULL,
+    last_id BIGINT NOT NULL,
+    row_count INTEGER NOT NULL,
+    -- jsonb array of the archived rows; one chunk is large enough for TOAST to compress it
+    payload JSONB NOT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE raw_transactions_archive ALTER COLUMN payload SET COMPRESSION lz4;
+
+CREATE INDEX idx_raw_transactions_archive_range ON raw_transactions_archive(first_id, last_id);
+
+-- Compaction work queue: only processed rows that still carry a payload
+CREATE INDEX idx_raw_transactions_compactable ON raw_transactions(id)
+    WHERE is_processed = true AND compacted_at IS NULL;
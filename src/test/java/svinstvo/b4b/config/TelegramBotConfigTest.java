@@ -0,0 +1,63 @@
+package svinstvo.b4b.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.annotation.ImportCandidates;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import svinstvo.b4b.service.IngestionService;
+import svinstvo.b4b.service.TelegramBotService;
+import svinstvo.b4b.service.TelegramUpdateDispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TelegramBotConfigTest {
+
+    private final TelegramBotService telegramBotService = mock(TelegramBotService.class);
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(TelegramBotConfig.class)
+            .withBean(TelegramBotService.class, () -> telegramBotService)
+            .withBean(TelegramUpdateDispatcher.class, () -> mock(TelegramUpdateDispatcher.class))
+            .withBean(IngestionService.class, () -> mock(IngestionService.class));
+
+    @Test
+    void pollingModeStartsOnlyTheCustomSession() {
+        when(telegramBotService.getOptions()).thenReturn(new DefaultBotOptions());
+
+        contextRunner.withPropertyValues("telegram.bot.mode=polling").run(context -> {
+            assertThat(context).hasSingleBean(BotSession.class);
+            assertThat(context.getBean(BotSession.class).isRunning()).isTrue();
+            assertThat(context).doesNotHaveBean(TelegramBotsApi.class);
+        });
+    }
+
+    @Test
+    void webhookModeStartsNoPollingSession() {
+        contextRunner.withPropertyValues("telegram.bot.mode=webhook").run(context -> {
+            assertThat(context).doesNotHaveBean(BotSession.class);
+            verify(telegramBotService, never()).clearWebhook();
+        });
+    }
+
+    @Test
+    void noTelegramAutoConfigurationOnTheClasspath() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        List<String> candidates = new ArrayList<>();
+        ImportCandidates.load(AutoConfiguration.class, classLoader).forEach(candidates::add);
+        candidates.addAll(SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, classLoader));
+
+        assertThat(candidates).noneMatch(name -> name.startsWith("org.telegram."));
+    }
+}
@@ -0,0 +1,105 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.RawTransaction;
+import svinstvo.b4b.model.Transaction;
+import svinstvo.b4b.repository.RawTransactionRepository;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+import svinstvo.b4b.repository.TransactionRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchPersistenceServiceTest {
+
+    private static final String OWNER = "node-a";
+
+    private final RawTransactionRepository rawTransactionRepository = mock(RawTransactionRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final SpendingRollupRepository spendingRollupRepository = mock(SpendingRollupRepository.class);
+
+    private final BatchPersistenceService service = new BatchPersistenceService(rawTransactionRepository,
+            transactionRepository, spendingRollupRepository, mock(ApplicationEventPublisher.class));
+
+    @BeforeEach
+    void setUp() {
+        // Stands in for @PrePersist
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            transactions.forEach(transaction -> transaction.setTransactionDate(LocalDateTime.now()));
+            return transactions;
+        });
+    }
+
+    @Test
+    void persistsOnlyRowsStillClaimedByTheCaller() {
+        // Row 2's claim expired and another node took it
+        when(rawTransactionRepository.markProcessed(any(), eq(OWNER))).thenReturn(List.of(1L, 3L));
+
+        List<Transaction> saved = service.saveParsedBatch(rows(1, 2, 3), results(1, 2, 3), OWNER);
+
+        assertThat(saved).hasSize(2);
+        verify(transactionRepository).saveAll(argThat((List<Transaction> transactions) ->
+                transactions.stream().map(Transaction::getRawTransactionId).toList().equals(List.of(1L, 3L))));
+        verify(spendingRollupRepository).addAll(argThat(deltas ->
+                deltas.size() == 1 && deltas.get(0).count() == 2
+                        && deltas.get(0).amount().compareTo(new BigDecimal("20")) == 0));
+    }
+
+    @Test
+    void lostClaimsWriteNothing() {
+        when(rawTransactionRepository.markProcessed(any(), eq(OWNER))).thenReturn(List.of());
+
+        assertThat(service.saveParsedBatch(rows(1, 2), results(1, 2), OWNER)).isEmpty();
+        assertThat(service.saveParsedTransaction(rows(1).get(0), results(1).get(1L), OWNER)).isFalse();
+
+        verify(transactionRepository, never()).save(any());
+        verify(spendingRollupRepository).addAll(List.of());
+    }
+
+    @Test
+    void unmatchedRowsAreFailedUnderTheSameOwner() {
+        when(rawTransactionRepository.markProcessed(any(), eq(OWNER))).thenReturn(List.of(1L));
+
+        service.saveParsedBatch(rows(1, 2), results(1), OWNER);
+
+        verify(rawTransactionRepository).markProcessed(new Long[]{1L}, OWNER);
+        verify(rawTransactionRepository).markFailed(new Long[]{2L}, OWNER, BatchPersistenceService.NO_RESULT_ERROR);
+    }
+
+    private static List<RawTransaction> rows(long... ids) {
+        return Arrays.stream(ids)
+                .mapToObj(id -> RawTransaction.builder().id(id).telegramChatId(7L).messageText("coffee 10").build())
+                .toList();
+    }
+
+    private static Map<Long, ParsedTransaction> results(long... ids) {
+        Map<Long, ParsedTransaction> results = new LinkedHashMap<>();
+        for (long id : ids) {
+            results.put(id, ParsedTransaction.builder()
+                    .id(id)
+                    .itemName("coffee")
+                    .amount(BigDecimal.TEN)
+                    .category("Food")
+                    .build());
+        }
+        return results;
+    }
+}
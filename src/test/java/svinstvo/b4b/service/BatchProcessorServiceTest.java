@@ -0,0 +1,224 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import svinstvo.b4b.config.OpenAIConfig;
+import svinstvo.b4b.config.SchedulerConfig;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.RawTransaction;
+import svinstvo.b4b.model.Transaction;
+import svinstvo.b4b.repository.RawTransactionRepository;
+import svinstvo.b4b.service.BatchProcessorService.DrainResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchProcessorServiceTest {
+
+    private static final long POISON_ID = 3L;
+
+    private final RawTransactionRepository rawTransactionRepository = mock(RawTransactionRepository.class);
+    private final BatchPersistenceService batchPersistenceService = mock(BatchPersistenceService.class);
+    private final OpenAIService openAIService = mock(OpenAIService.class);
+    private final OpenAICircuitBreaker circuitBreaker = mock(OpenAICircuitBreaker.class);
+    private final LocalExpenseParser localExpenseParser = mock(LocalExpenseParser.class);
+    private final ParseCacheService parseCacheService = mock(ParseCacheService.class);
+    private final TokenBudgetEstimator tokenBudgetEstimator = mock(TokenBudgetEstimator.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<RawTransaction> rows = LongStream.rangeClosed(1, 4)
+            // Rows 1-3 belong to chat 10, row 4 to chat 20
+            .mapToObj(id -> RawTransaction.builder().id(id).telegramChatId(id < 4 ? 10L : 20L)
+                    .messageText("message " + id).build())
+            .toList();
+
+    private BatchProcessorService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BatchProcessorService(rawTransactionRepository, batchPersistenceService, openAIService,
+                circuitBreaker, localExpenseParser, parseCacheService, tokenBudgetEstimator,
+                new SchedulerConfig(), new OpenAIConfig(), meterRegistry);
+
+        when(circuitBreaker.isCallPermitted()).thenReturn(true);
+        when(rawTransactionRepository.countPending()).thenReturn((long) rows.size());
+        when(tokenBudgetEstimator.claimSize(anyInt())).thenReturn(50);
+        when(tokenBudgetEstimator.pack(anyList())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            return List.of(batch);
+        });
+        when(batchPersistenceService.claimBatch(anyInt(), anyString())).thenReturn(rows, List.of());
+        when(batchPersistenceService.saveParsedBatch(anyList(), anyMap(), anyString())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            Map<Long, ParsedTransaction> results = invocation.getArgument(1);
+            return batch.stream()
+                    .filter(rawTx -> results.containsKey(rawTx.getId()))
+                    .map(rawTx -> Transaction.builder()
+                            .rawTransactionId(rawTx.getId())
+                            .telegramChatId(rawTx.getTelegramChatId())
+                            .build())
+                    .toList();
+        });
+    }
+
+    @Test
+    void bisectsUntilTheFailingMessageIsIsolated() {
+        // Any call containing the poison row fails as a whole, like a garbled response
+        when(openAIService.parseTransactionsAsync(anyList())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            return batch.stream().anyMatch(rawTx -> rawTx.getId() == POISON_ID)
+                    ? Mono.error(new IllegalStateException("unparseable response"))
+                    : Mono.just(parsed(batch));
+        });
+
+        int processed = service.processPendingTransactions().processed();
+
+        assertThat(processed).isEqualTo(3);
+        // [1..4] -> [1,2] ok, [3,4] -> [3] fails alone, [4] ok
+        verify(openAIService, times(5)).parseTransactionsAsync(anyList());
+        verify(batchPersistenceService).markBatchFailed(
+                argThat((Collection<RawTransaction> failed) -> ids(failed).equals(List.of(POISON_ID))),
+                argThat(error -> error.contains("unparseable response")), anyString());
+        verify(batchPersistenceService, never()).releaseClaims(any(), any());
+        assertThat(meterRegistry.counter("b4b.categorization.bisect.retries").count()).isEqualTo(4);
+    }
+
+    @Test
+    void retriesOnlyTheRowsTheModelLeftOut() {
+        // The model silently drops the poison row but answers the rest
+        when(openAIService.parseTransactionsAsync(anyList())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            return Mono.just(parsed(batch.stream().filter(rawTx -> rawTx.getId() != POISON_ID).toList()));
+        });
+
+        int processed = service.processPendingTransactions().processed();
+
+        assertThat(processed).isEqualTo(3);
+        verify(openAIService).parseTransactionsAsync(argThat(batch -> ids(batch).equals(List.of(POISON_ID))));
+        verify(batchPersistenceService).markBatchFailed(
+                argThat((Collection<RawTransaction> failed) -> ids(failed).equals(List.of(POISON_ID))),
+                eq(BatchPersistenceService.NO_RESULT_ERROR), anyString());
+    }
+
+    @Test
+    void upstreamFailureReleasesClaimsWithoutBisecting() {
+        when(openAIService.parseTransactionsAsync(anyList())).thenReturn(Mono.error(
+                WebClientResponseException.create(HttpStatus.SERVICE_UNAVAILABLE.value(), "down", null, null, null)));
+
+        DrainResult result = service.processPendingTransactions();
+
+        assertThat(result.processed()).isZero();
+        assertThat(result.released()).isEqualTo(4);
+        verify(openAIService, times(1)).parseTransactionsAsync(anyList());
+        verify(batchPersistenceService).releaseClaims(
+                argThat((Collection<RawTransaction> released) -> ids(released).equals(List.of(1L, 2L, 3L, 4L))), anyString());
+        verify(batchPersistenceService, never()).markBatchFailed(any(), any(), any());
+    }
+
+    @Test
+    void openCircuitReportsPendingRowsInsteadOfSuccess() {
+        when(circuitBreaker.isCallPermitted()).thenReturn(false);
+
+        DrainResult result = service.processPendingTransactions();
+
+        assertThat(result).isEqualTo(new DrainResult(0, 0, 4, true, Map.of()));
+        verify(batchPersistenceService, never()).claimBatch(anyInt(), anyString());
+    }
+
+    @Test
+    void countsAndReportsProgressPerChat() {
+        when(openAIService.parseTransactionsAsync(anyList())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            return Mono.just(parsed(batch));
+        });
+        Map<Long, Integer> progress = new ConcurrentHashMap<>();
+
+        DrainResult result = service.processPendingTransactions(progress::put);
+
+        assertThat(result.processedFor(10L)).isEqualTo(3);
+        assertThat(result.processedFor(20L)).isEqualTo(1);
+        assertThat(result.processedFor(30L)).isZero();
+        assertThat(progress).containsExactlyInAnyOrderEntriesOf(Map.of(10L, 3, 20L, 1));
+    }
+
+    @Test
+    void concurrentCallersShareOneFollowUpDrain() throws Exception {
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        when(openAIService.parseTransactionsAsync(anyList())).thenAnswer(invocation -> {
+            List<RawTransaction> batch = invocation.getArgument(0);
+            return Mono.fromCallable(() -> {
+                calling.countDown();
+                respond.await(5, TimeUnit.SECONDS);
+                return parsed(batch);
+            }).subscribeOn(Schedulers.boundedElastic());
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+
+        try {
+            Future<DrainResult> first = callers.submit(() -> service.processPendingTransactions());
+            assertThat(calling.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<DrainResult> second = callers.submit(() -> service.processPendingTransactions());
+            Future<DrainResult> third = callers.submit(() -> service.processPendingTransactions());
+
+            // Neither starts a pipeline of its own while the first drain is in flight
+            Thread.sleep(100);
+            verify(rawTransactionRepository, times(1)).countPending();
+
+            respond.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS).processed()).isEqualTo(4);
+            DrainResult followUp = second.get(5, TimeUnit.SECONDS);
+            assertThat(third.get(5, TimeUnit.SECONDS)).isSameAs(followUp);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // One claim per drain: the first takes the rows, the follow-up finds nothing left
+        verify(batchPersistenceService, times(2)).claimBatch(anyInt(), anyString());
+        verify(openAIService, times(1)).parseTransactionsAsync(anyList());
+    }
+
+    private static List<ParsedTransaction> parsed(List<RawTransaction> batch) {
+        return batch.stream()
+                .map(rawTx -> ParsedTransaction.builder()
+                        .id(rawTx.getId())
+                        .itemName(rawTx.getMessageText())
+                        .amount(BigDecimal.TEN)
+                        .currency("CZK")
+                        .category("Other")
+                        .build())
+                .toList();
+    }
+
+    private static List<Long> ids(Collection<RawTransaction> batch) {
+        return new ArrayList<>(batch.stream().map(RawTransaction::getId).toList());
+    }
+}
@@ -0,0 +1,15 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheKeysTest {
+
+    @Test
+    void hashesTheNewlineJoinedParts() {
+        // Same value as the single-string hash the persistent parse cache was keyed with
+        assertThat(CacheKeys.sha256("abc")).isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        assertThat(CacheKeys.sha256("signature", "coffee 85")).isEqualTo(CacheKeys.sha256("signature\ncoffee 85"));
+    }
+}
@@ -0,0 +1,87 @@
+package svinstvo.b4b.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import svinstvo.b4b.dto.ParsedTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonArrayStreamParserTest {
+
+    private final JsonArrayStreamParser<ParsedTransaction> parser =
+            new JsonArrayStreamParser<>(new ObjectMapper(), ParsedTransaction.class);
+
+    @Test
+    void emitsEachObjectOnceItsClosingBraceArrives() {
+        assertThat(parser.feed("```json\n[{\"id\": 1, \"item_name\": \"Be")).isEmpty();
+        assertThat(parser.feed("er\", \"amount\": 80}, {\"id\"")).extracting(ParsedTransaction::getItemName)
+                .containsExactly("Beer");
+        assertThat(parser.feed(": 2, \"item_name\": \"Chips\"}]\n```")).extracting(ParsedTransaction::getId)
+                .containsExactly(2L);
+        assertThat(parser.isFinished()).isTrue();
+        assertThat(parser.isMalformed()).isFalse();
+    }
+
+    @Test
+    void handlesEveryCharacterArrivingSeparately() {
+        String json = "[{\"id\": 1, \"item_name\": \"a\"}, {\"id\": 2, \"item_name\": \"b\"}]";
+        List<ParsedTransaction> parsed = new ArrayList<>();
+        for (char c : json.toCharArray()) {
+            parsed.addAll(parser.feed(String.valueOf(c)));
+        }
+
+        assertThat(parsed).extracting(ParsedTransaction::getId).containsExactly(1L, 2L);
+        assertThat(parser.isFinished()).isTrue();
+    }
+
+    @Test
+    void bracesAndBracketsInsideStringsAreText() {
+        List<ParsedTransaction> parsed = parser.feed(
+                "[{\"id\": 1, \"item_name\": \"weird } name ]\"}, {\"id\": 2, \"item_name\": \"{[\"}]");
+
+        assertThat(parsed).extracting(ParsedTransaction::getItemName).containsExactly("weird } name ]", "{[");
+    }
+
+    @Test
+    void escapedQuotesDoNotEndTheString() {
+        List<ParsedTransaction> parsed = new ArrayList<>();
+        parsed.addAll(parser.feed("[{\"id\": 1, \"item_name\": \"the \\\"best"));
+        parsed.addAll(parser.feed("\\\" }coffee\"}]"));
+
+        assertThat(parsed).extracting(ParsedTransaction::getItemName).containsExactly("the \"best\" }coffee");
+    }
+
+    @Test
+    void truncatedFinalElementKeepsCompletedOnes() {
+        List<ParsedTransaction> parsed = parser.feed(
+                "[{\"id\": 1, \"item_name\": \"Beer\"}, {\"id\": 2, \"item_name\": \"Chi");
+
+        assertThat(parsed).extracting(ParsedTransaction::getId).containsExactly(1L);
+        assertThat(parser.isFinished()).isFalse();
+    }
+
+    @Test
+    void malformedInputStopsWithoutLosingCompletedElements() {
+        List<ParsedTransaction> parsed = parser.feed("[{\"id\": 1}, {\"id\": 2,, }, {\"id\": 3}]");
+
+        assertThat(parsed).extracting(ParsedTransaction::getId).containsExactly(1L);
+        assertThat(parser.isMalformed()).isTrue();
+        assertThat(parser.feed("{\"id\": 4}")).isEmpty();
+    }
+
+    @Test
+    void elementWithWrongTypeIsSkipped() {
+        List<ParsedTransaction> parsed = parser.feed("[{\"id\": 1}, {\"id\": \"nope\"}, {\"id\": 3}]");
+
+        assertThat(parsed).extracting(ParsedTransaction::getId).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void ignoresTextBeforeTheArray() {
+        assertThat(parser.feed("Here you go: ")).isEmpty();
+        assertThat(parser.feed("[{\"id\": 7}]")).extracting(ParsedTransaction::getId).containsExactly(7L);
+    }
+}
@@ -0,0 +1,67 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import svinstvo.b4b.config.LocalParserConfig;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalExpenseParserTest {
+
+    private final LocalExpenseParser parser = new LocalExpenseParser(new LocalParserConfig(), new SimpleMeterRegistry());
+
+    @Test
+    void parsesPlainAmountWithSuffixCurrency() {
+        ParsedTransaction parsed = parse("Rent 15000 czk").orElseThrow();
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo("15000");
+        assertThat(parsed.getCurrency()).isEqualTo("CZK");
+        assertThat(parsed.getCategory()).isEqualTo("Rent");
+        assertThat(parsed.getItemName()).isEqualTo("Rent");
+    }
+
+    @Test
+    void leavesGroupedNumbersToOpenAI() {
+        assertThat(parse("Rent 15,000")).isEmpty();
+        assertThat(parse("Rent 15.000")).isEmpty();
+        assertThat(parse("Rent 15,000 czk")).isEmpty();
+        assertThat(parse("Rent 1.500,50")).isEmpty();
+    }
+
+    @Test
+    void parsesDecimalComma() {
+        ParsedTransaction parsed = parse("Coffee 85,50").orElseThrow();
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo(new BigDecimal("85.50"));
+        assertThat(parsed.getCategory()).isEqualTo("Overpriced-Food");
+    }
+
+    @Test
+    void parsesCurrencyPrefixAndSuffix() {
+        assertThat(parse("€12 pizza").orElseThrow().getCurrency()).isEqualTo("EUR");
+        assertThat(parse("pizza $12.5").orElseThrow().getCurrency()).isEqualTo("USD");
+        assertThat(parse("pizza 12 eur").orElseThrow().getCurrency()).isEqualTo("EUR");
+        assertThat(parse("pizza 120kč").orElseThrow().getCurrency()).isEqualTo("CZK");
+    }
+
+    @Test
+    void rejectsMultipleNumbers() {
+        assertThat(parse("2 beers 180")).isEmpty();
+        assertThat(parse("Rent 1 500")).isEmpty();
+    }
+
+    @Test
+    void rejectsUnknownOrConflictingCategories() {
+        assertThat(parse("Gift for mom 500")).isEmpty();
+        assertThat(parse("Beer and groceries 500")).isEmpty();
+    }
+
+    private Optional<ParsedTransaction> parse(String text) {
+        return parser.parse(RawTransaction.builder().id(1L).messageText(text).build());
+    }
+}
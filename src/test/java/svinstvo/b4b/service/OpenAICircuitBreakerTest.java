@@ -0,0 +1,114 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+import svinstvo.b4b.service.OpenAICircuitBreaker.State;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenAICircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(20);
+
+    private final OpenAICircuitBreaker breaker = breaker(2);
+
+    @Test
+    void closedOpenHalfOpenClosed() throws InterruptedException {
+        assertThat(breaker.acquirePermission()).isFalse();
+        breaker.recordFailure(new TimeoutException());
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        breaker.recordFailure(serverError());
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThatThrownBy(breaker::acquirePermission).isInstanceOf(OpenAIUnavailableException.class);
+
+        waitOutOpenDuration();
+        assertThat(breaker.isCallPermitted()).isTrue();
+        assertThat(breaker.acquirePermission()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+        // Only one trial at a time
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThatThrownBy(breaker::acquirePermission).isInstanceOf(OpenAIUnavailableException.class);
+
+        breaker.recordSuccess();
+        breaker.releaseTrial();
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        assertThat(breaker.acquirePermission()).isFalse();
+    }
+
+    @Test
+    void failedTrialReopens() throws InterruptedException {
+        open();
+        waitOutOpenDuration();
+        assertThat(breaker.acquirePermission()).isTrue();
+
+        breaker.recordFailure(serverError());
+        breaker.releaseTrial();
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertThat(breaker.isCallPermitted()).isFalse();
+        waitOutOpenDuration();
+        assertThat(breaker.acquirePermission()).isTrue();
+    }
+
+    @Test
+    void releasedTrialWithoutOutcomeLetsTheNextCallTry() throws InterruptedException {
+        open();
+        waitOutOpenDuration();
+        assertThat(breaker.acquirePermission()).isTrue();
+
+        // Cancelled: neither success nor failure recorded
+        breaker.releaseTrial();
+
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.acquirePermission()).isTrue();
+    }
+
+    @Test
+    void rejectedRequestsDoNotCountAsUpstreamFailures() {
+        breaker.recordFailure(WebClientResponseException.create(400, "bad", null, null, null));
+        breaker.recordFailure(WebClientResponseException.create(400, "bad", null, null, null));
+
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void classifiesUpstreamFailures() {
+        assertThat(OpenAICircuitBreaker.isUpstreamFailure(serverError())).isTrue();
+        assertThat(OpenAICircuitBreaker.isUpstreamFailure(
+                WebClientResponseException.create(HttpStatus.TOO_MANY_REQUESTS.value(), "slow down", null, null, null)))
+                .isTrue();
+        assertThat(OpenAICircuitBreaker.isUpstreamFailure(new RuntimeException(new TimeoutException()))).isTrue();
+        assertThat(OpenAICircuitBreaker.isUpstreamFailure(
+                WebClientResponseException.create(401, "nope", null, null, null))).isFalse();
+        assertThat(OpenAICircuitBreaker.isUpstreamFailure(new IllegalStateException())).isFalse();
+    }
+
+    private void open() {
+        breaker.recordFailure(serverError());
+        breaker.recordFailure(serverError());
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    static OpenAICircuitBreaker breaker(int failureThreshold) {
+        OpenAIResilienceConfig config = new OpenAIResilienceConfig();
+        config.setFailureThreshold(failureThreshold);
+        config.setOpenDuration(OPEN_DURATION);
+        return new OpenAICircuitBreaker(config, new SimpleMeterRegistry());
+    }
+
+    static void waitOutOpenDuration() throws InterruptedException {
+        Thread.sleep(OPEN_DURATION.plusMillis(10));
+    }
+
+    private static WebClientResponseException serverError() {
+        return WebClientResponseException.create(HttpStatus.SERVICE_UNAVAILABLE.value(), "down", null, null, null);
+    }
+}
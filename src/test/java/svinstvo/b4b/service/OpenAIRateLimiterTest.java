@@ -0,0 +1,108 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAIRateLimiterTest {
+
+    @Test
+    void parsesResetDurations() {
+        assertThat(OpenAIRateLimiter.resetDuration("6s")).isEqualTo(Duration.ofSeconds(6));
+        assertThat(OpenAIRateLimiter.resetDuration("250ms")).isEqualTo(Duration.ofMillis(250));
+        assertThat(OpenAIRateLimiter.resetDuration("1m30s")).isEqualTo(Duration.ofSeconds(90));
+        assertThat(OpenAIRateLimiter.resetDuration("6m0s")).isEqualTo(Duration.ofMinutes(6));
+        assertThat(OpenAIRateLimiter.resetDuration("1h2m3.5s")).isEqualTo(Duration.ofMillis(3_723_500));
+        assertThat(OpenAIRateLimiter.resetDuration("0.5s")).isEqualTo(Duration.ofMillis(500));
+        assertThat(OpenAIRateLimiter.resetDuration(null)).isZero();
+        assertThat(OpenAIRateLimiter.resetDuration("soon")).isZero();
+    }
+
+    @Test
+    void callsWithinTheBucketDoNotWait() {
+        OpenAIRateLimiter limiter = limiter(60, 10_000);
+
+        assertThat(limiter.reserve(1_000)).isZero();
+        assertThat(limiter.reserve(1_000)).isZero();
+    }
+
+    @Test
+    void emptyRequestBucketWaitsForRefill() {
+        // One request per second
+        OpenAIRateLimiter limiter = limiter(60, 1_000_000);
+        for (int i = 0; i < 60; i++) {
+            limiter.reserve(1);
+        }
+
+        assertThat(limiter.reserve(1)).isBetween(Duration.ofMillis(900), Duration.ofSeconds(1));
+    }
+
+    @Test
+    void tokenBucketWaitsInProportionToTheShortfall() {
+        // 1000 tokens per minute: a 500-token shortfall takes 30 seconds to refill
+        OpenAIRateLimiter limiter = limiter(1_000, 1_000);
+        limiter.reserve(1_000);
+
+        assertThat(limiter.reserve(500)).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+    }
+
+    @Test
+    void oversizedCallIsCappedAtBucketSize() {
+        OpenAIRateLimiter limiter = limiter(1_000, 1_000);
+
+        assertThat(limiter.reserve(50_000)).isZero();
+    }
+
+    @Test
+    void retryAfterBlocksEveryCaller() {
+        OpenAIRateLimiter limiter = limiter(1_000, 1_000_000);
+        limiter.blockFor(Duration.ofSeconds(5));
+
+        assertThat(limiter.reserve(1)).isBetween(Duration.ofMillis(4_900), Duration.ofSeconds(5));
+        assertThat(limiter.reserve(1)).isBetween(Duration.ofMillis(4_900), Duration.ofSeconds(5));
+    }
+
+    @Test
+    void exhaustedHeadersBlockUntilTheLongerReset() {
+        OpenAIRateLimiter limiter = limiter(1_000, 1_000_000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-remaining-requests", "0");
+        headers.add("x-ratelimit-remaining-tokens", "5000");
+        headers.add("x-ratelimit-reset-requests", "6s");
+        headers.add("x-ratelimit-reset-tokens", "250ms");
+
+        limiter.update(headers);
+
+        assertThat(limiter.reserve(1)).isBetween(Duration.ofMillis(5_900), Duration.ofSeconds(6));
+    }
+
+    @Test
+    void headersShrinkTheBucketButNeverRaiseTheLevel() {
+        OpenAIRateLimiter limiter = limiter(1_000, 100_000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-limit-tokens", "60000");
+        headers.add("x-ratelimit-remaining-tokens", "1000");
+        limiter.update(headers);
+
+        // 1000 left, 1000 tokens per second refill at the new 60000/min limit
+        assertThat(limiter.reserve(3_000)).isBetween(Duration.ofMillis(1_900), Duration.ofSeconds(2));
+
+        HttpHeaders stale = new HttpHeaders();
+        stale.add("x-ratelimit-remaining-tokens", "60000");
+        limiter.update(stale);
+
+        assertThat(limiter.reserve(1)).isPositive();
+    }
+
+    private static OpenAIRateLimiter limiter(int requestsPerMinute, int tokensPerMinute) {
+        OpenAIResilienceConfig config = new OpenAIResilienceConfig();
+        config.setRequestsPerMinute(requestsPerMinute);
+        config.setTokensPerMinute(tokensPerMinute);
+        return new OpenAIRateLimiter(config, new SimpleMeterRegistry());
+    }
+}
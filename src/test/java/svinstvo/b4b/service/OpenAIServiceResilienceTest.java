@@ -0,0 +1,131 @@
+package svinstvo.b4b.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import svinstvo.b4b.config.OpenAIConfig;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+import svinstvo.b4b.config.TokenBudgetConfig;
+import svinstvo.b4b.service.OpenAICircuitBreaker.State;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Circuit breaker behaviour across retries and cancellation, driven through the advice call
+class OpenAIServiceResilienceTest {
+
+    private static final String ADVICE_JSON = "{\"choices\": [{\"message\": {\"role\": \"assistant\", \"content\": \"Cook at home\"}}]}";
+
+    private final AtomicReference<Supplier<Mono<ClientResponse>>> upstream = new AtomicReference<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final OpenAICircuitBreaker breaker = OpenAICircuitBreakerTest.breaker(1);
+
+    private OpenAIService service;
+
+    @BeforeEach
+    void setUp() {
+        OpenAIResilienceConfig resilienceConfig = new OpenAIResilienceConfig();
+        resilienceConfig.setMaxRetries(2);
+        resilienceConfig.setInitialBackoff(Duration.ofMillis(1));
+        resilienceConfig.setMaxBackoff(Duration.ofMillis(1));
+
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.incrementAndGet();
+                    return upstream.get().get();
+                })
+                .build();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new OpenAIService(webClient, new OpenAIConfig(), new ObjectMapper(),
+                new TokenBudgetEstimator(new TokenBudgetConfig()), resilienceConfig,
+                new OpenAIRateLimiter(resilienceConfig, meterRegistry), breaker, meterRegistry);
+    }
+
+    @Test
+    void retryableTrialFailureReopensAndALaterTrialCloses() throws InterruptedException {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThatThrownBy(this::advice).isInstanceOf(WebClientResponseException.class);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+
+        // The trial is retried on 503 like any call; the retries must not be refused as a second trial
+        OpenAICircuitBreakerTest.waitOutOpenDuration();
+        requests.set(0);
+        assertThatThrownBy(this::advice).isInstanceOf(WebClientResponseException.class);
+        assertThat(requests).hasValue(3);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+
+        OpenAICircuitBreakerTest.waitOutOpenDuration();
+        respondWith(HttpStatus.OK);
+        assertThat(advice()).isEqualTo("Cook at home");
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void trialThatRecoversOnRetryCloses() throws InterruptedException {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThatThrownBy(this::advice).isInstanceOf(WebClientResponseException.class);
+
+        OpenAICircuitBreakerTest.waitOutOpenDuration();
+        AtomicInteger attempts = new AtomicInteger();
+        upstream.set(() -> attempts.incrementAndGet() == 1 ? response(HttpStatus.BAD_GATEWAY) : response(HttpStatus.OK));
+
+        assertThat(advice()).isEqualTo("Cook at home");
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void cancelledTrialFreesTheSlot() throws InterruptedException {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThatThrownBy(this::advice).isInstanceOf(WebClientResponseException.class);
+
+        OpenAICircuitBreakerTest.waitOutOpenDuration();
+        upstream.set(Mono::never);
+        Disposable trial = service.generateFinancialAdvice("summary", 5000.0).subscribe();
+        assertThat(breaker.isCallPermitted()).isFalse();
+
+        trial.dispose();
+
+        assertThat(breaker.isCallPermitted()).isTrue();
+        respondWith(HttpStatus.OK);
+        assertThat(advice()).isEqualTo("Cook at home");
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingUpstream() {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThatThrownBy(this::advice).isInstanceOf(WebClientResponseException.class);
+        requests.set(0);
+
+        assertThatThrownBy(this::advice).isInstanceOf(OpenAIUnavailableException.class);
+        assertThat(requests).hasValue(0);
+    }
+
+    private String advice() {
+        return service.generateFinancialAdvice("summary", 5000.0).block(Duration.ofSeconds(5));
+    }
+
+    private void respondWith(HttpStatus status) {
+        upstream.set(() -> response(status));
+    }
+
+    private static Mono<ClientResponse> response(HttpStatus status) {
+        ClientResponse.Builder builder = ClientResponse.create(status)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        return Mono.just(status.is2xxSuccessful() ? builder.body(ADVICE_JSON).build() : builder.build());
+    }
+}
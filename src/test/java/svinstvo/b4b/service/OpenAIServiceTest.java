@@ -0,0 +1,52 @@
+package svinstvo.b4b.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import svinstvo.b4b.config.OpenAIConfig;
+import svinstvo.b4b.config.OpenAIResilienceConfig;
+import svinstvo.b4b.config.TokenBudgetConfig;
+import svinstvo.b4b.dto.ParsedTransaction;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAIServiceTest {
+
+    @Test
+    void parsesResponsesWithoutUsage() {
+        String content = "[{\\\"id\\\": 1, \\\"item_name\\\": \\\"coffee\\\", \\\"amount\\\": 80, \\\"category\\\": \\\"Food\\\"}]";
+        OpenAIService service = service("{\"choices\": [{\"message\": {\"role\": \"assistant\", \"content\": \""
+                + content + "\"}, \"finish_reason\": \"stop\"}]}");
+
+        List<ParsedTransaction> parsed = service.parseTransactionsAsync(List.of(
+                        RawTransaction.builder().id(1L).telegramChatId(7L).messageText("coffee 80").build()))
+                .block(Duration.ofSeconds(5));
+
+        assertThat(parsed).extracting(ParsedTransaction::getId).containsExactly(1L);
+    }
+
+    private static OpenAIService service(String body) {
+        OpenAIResilienceConfig resilienceConfig = new OpenAIResilienceConfig();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build()))
+                .build();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new OpenAIService(webClient, new OpenAIConfig(), new ObjectMapper(),
+                new TokenBudgetEstimator(new TokenBudgetConfig()), resilienceConfig,
+                new OpenAIRateLimiter(resilienceConfig, meterRegistry),
+                new OpenAICircuitBreaker(resilienceConfig, meterRegistry), meterRegistry);
+    }
+}
@@ -0,0 +1,68 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import svinstvo.b4b.config.PartitioningConfig;
+import svinstvo.b4b.repository.SpendingRollupRepository;
+import svinstvo.b4b.repository.TransactionPartitionRepository;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PartitionMaintenanceServiceTest {
+
+    private final TransactionPartitionRepository partitionRepository = mock(TransactionPartitionRepository.class);
+    private final SpendingRollupRepository spendingRollupRepository = mock(SpendingRollupRepository.class);
+    private final PartitioningConfig config = new PartitioningConfig();
+    private final PartitionMaintenanceService service =
+            new PartitionMaintenanceService(partitionRepository, spendingRollupRepository, config);
+
+    private final YearMonth cutoff = YearMonth.now().minusMonths(6);
+    private final String expired = TransactionPartitionRepository.partitionName(cutoff.minusMonths(1));
+    private final String kept = TransactionPartitionRepository.partitionName(cutoff);
+
+    @Test
+    void freezesTheRollupBeforeDetaching() {
+        config.setArchiveAfterMonths(6);
+        when(partitionRepository.findAttachedPartitions()).thenReturn(List.of(expired, kept, "transactions_default"));
+
+        service.maintain();
+
+        InOrder order = inOrder(spendingRollupRepository, partitionRepository);
+        order.verify(spendingRollupRepository).freezeBefore(cutoff.atDay(1));
+        order.verify(partitionRepository).detach(expired);
+        verify(partitionRepository, never()).detach(kept);
+        verify(partitionRepository, never()).detach("transactions_default");
+    }
+
+    @Test
+    void keepsPartitionsAttachedWhenTheFreezeFails() {
+        config.setArchiveAfterMonths(6);
+        when(partitionRepository.findAttachedPartitions()).thenReturn(List.of(expired));
+        doThrow(new DataAccessResourceFailureException("down")).when(spendingRollupRepository).freezeBefore(any());
+
+        service.maintain();
+
+        verify(partitionRepository, never()).detach(anyString());
+    }
+
+    @Test
+    void nothingExpiredFreezesNothing() {
+        config.setArchiveAfterMonths(6);
+        when(partitionRepository.findAttachedPartitions()).thenReturn(List.of(kept));
+
+        service.maintain();
+
+        verify(spendingRollupRepository, never()).freezeBefore(any());
+    }
+}
@@ -0,0 +1,72 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import svinstvo.b4b.config.ReportingConfig;
+import svinstvo.b4b.event.RawTransactionsIngestedEvent;
+import svinstvo.b4b.event.TransactionsPersistedEvent;
+import svinstvo.b4b.service.ReportCacheService.ReportType;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReportCacheServiceTest {
+
+    private static final LocalDate PERIOD = LocalDate.of(2026, 10, 1);
+
+    private final ReportCacheService cache = new ReportCacheService(new ReportingConfig(), new SimpleMeterRegistry());
+
+    @Test
+    void servesSnapshotUntilChatChanges() {
+        assertThat(get(1L, () -> "v1")).isEqualTo("v1");
+        assertThat(get(1L, () -> "v2")).isEqualTo("v1");
+
+        cache.onIngested(new RawTransactionsIngestedEvent(1, Set.of(2L)));
+        assertThat(get(1L, () -> "v2")).isEqualTo("v1");
+
+        cache.onPersisted(new TransactionsPersistedEvent(Set.of(1L)));
+        assertThat(get(1L, () -> "v2")).isEqualTo("v2");
+    }
+
+    @Test
+    void loadThatStartedBeforeCommitIsNotServedAfterIt() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        AtomicReference<String> database = new AtomicReference<>("before");
+
+        CompletableFuture<String> staleLoad = CompletableFuture.supplyAsync(() -> get(1L, () -> {
+            String snapshot = database.get();
+            loading.countDown();
+            await(committed);
+            return snapshot;
+        }));
+
+        await(loading);
+        database.set("after");
+        cache.onPersisted(new TransactionsPersistedEvent(Set.of(1L)));
+        committed.countDown();
+
+        assertThat(staleLoad.get(5, TimeUnit.SECONDS)).isEqualTo("before");
+        assertThat(get(1L, database::get)).isEqualTo("after");
+    }
+
+    private String get(long chatId, Supplier<String> loader) {
+        return cache.get(chatId, ReportType.QUICK_STATS, PERIOD, loader);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package svinstvo.b4b.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import svinstvo.b4b.config.TelegramDispatcherConfig;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class TelegramUpdateDispatcherTest {
+
+    private static final long SLOW_CHAT = 1L;
+
+    private final IngestionService ingestionService = mock(IngestionService.class);
+    private final TelegramUpdateDispatcher dispatcher = new TelegramUpdateDispatcher(
+            new TelegramDispatcherConfig(), ingestionService, new SimpleMeterRegistry());
+    private final CompletableFuture<Void> slowHandler = new CompletableFuture<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        slowHandler.complete(null);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void slowChatDoesNotHoldBackPolling() throws Exception {
+        dispatcher.resumeFrom(100);
+
+        // Update 101 hangs, then a full getUpdates window of other chats arrives behind it
+        List<Update> firstPoll = IntStream.rangeClosed(101, 200)
+                .mapToObj(id -> update(id, id == 101 ? SLOW_CHAT : id))
+                .toList();
+        List<CompletableFuture<Void>> handled = dispatchAll(dispatcher.acceptNew(firstPoll));
+
+        CompletableFuture.allOf(handled.subList(1, handled.size()).toArray(CompletableFuture[]::new))
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatcher.nextOffset()).isEqualTo(201);
+        assertThat(dispatcher.acceptNew(List.of(update(201, 2L)))).hasSize(1);
+        // Nothing after the unfinished update is checkpointed, so a restart re-reads it
+        assertThat(dispatcher.getAckedUpdateId()).isEqualTo(100);
+        verify(ingestionService, never()).updateLastUpdateId(anyInt());
+    }
+
+    @Test
+    void checkpointCatchesUpOnceTheSlowUpdateFinishes() throws Exception {
+        dispatcher.resumeFrom(100);
+        List<CompletableFuture<Void>> handled = dispatchAll(dispatcher.acceptNew(
+                List.of(update(101, SLOW_CHAT), update(102, 2L), update(103, 3L))));
+
+        slowHandler.complete(null);
+        CompletableFuture.allOf(handled.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(dispatcher.getAckedUpdateId()).isEqualTo(103);
+        verify(ingestionService).updateLastUpdateId(103);
+    }
+
+    @Test
+    void alreadyReceivedUpdatesAreNotDispatchedTwice() {
+        dispatcher.resumeFrom(100);
+        dispatcher.acceptNew(List.of(update(101, 2L), update(102, 2L)));
+
+        assertThat(dispatcher.acceptNew(List.of(update(101, 2L), update(102, 2L), update(103, 2L))))
+                .extracting(Update::getUpdateId)
+                .containsExactly(103);
+    }
+
+    private List<CompletableFuture<Void>> dispatchAll(List<Update> updates) {
+        return updates.stream()
+                .map(update -> dispatcher.dispatch(update,
+                        u -> u.getMessage().getChatId() == SLOW_CHAT
+                                ? slowHandler
+                                : CompletableFuture.completedFuture(null),
+                        u -> {
+                        }))
+                .toList();
+    }
+
+    private static Update update(int updateId, long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        Message message = new Message();
+        message.setChat(chat);
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+}
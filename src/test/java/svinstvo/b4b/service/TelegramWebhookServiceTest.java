@@ -0,0 +1,42 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.Test;
+import svinstvo.b4b.config.TelegramConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class TelegramWebhookServiceTest {
+
+    @Test
+    void refusesToStartWithoutSecret() {
+        assertThatThrownBy(() -> service(null).requireSecret()).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> service(" ").requireSecret()).isInstanceOf(IllegalStateException.class);
+        assertThatCode(() -> service("s3cret").requireSecret()).doesNotThrowAnyException();
+    }
+
+    @Test
+    void acceptsOnlyTheConfiguredSecret() {
+        TelegramWebhookService service = service("s3cret");
+
+        assertThat(service.isAuthorized("s3cret")).isTrue();
+        assertThat(service.isAuthorized("s3cre")).isFalse();
+        assertThat(service.isAuthorized("")).isFalse();
+        assertThat(service.isAuthorized(null)).isFalse();
+    }
+
+    @Test
+    void blankSecretAuthorizesNothing() {
+        assertThat(service("").isAuthorized("")).isFalse();
+        assertThat(service(null).isAuthorized(null)).isFalse();
+    }
+
+    private static TelegramWebhookService service(String secret) {
+        TelegramConfig config = new TelegramConfig();
+        config.setMode("webhook");
+        config.setWebhookSecret(secret);
+        return new TelegramWebhookService(config, mock(TelegramBotService.class));
+    }
+}
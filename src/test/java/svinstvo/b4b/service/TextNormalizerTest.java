@@ -0,0 +1,19 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextNormalizerTest {
+
+    @Test
+    void cleanTrimsEdgePunctuationAndCollapsesWhitespace() {
+        assertThat(TextNormalizer.clean("  - Beer   and chips!! ")).isEqualTo("Beer and chips");
+    }
+
+    @Test
+    void normalizeFoldsCaseAndCompatibilityForms() {
+        assertThat(TextNormalizer.normalize("ＣＯＦＦＥＥ\t 85.")).isEqualTo("coffee 85");
+        assertThat(TextNormalizer.normalize("Coffee 85")).isEqualTo(TextNormalizer.normalize("coffee  85!"));
+    }
+}
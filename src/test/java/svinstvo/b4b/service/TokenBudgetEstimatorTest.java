@@ -0,0 +1,111 @@
+package svinstvo.b4b.service;
+
+import org.junit.jupiter.api.Test;
+import svinstvo.b4b.config.TokenBudgetConfig;
+import svinstvo.b4b.dto.OpenAIResponse;
+import svinstvo.b4b.model.RawTransaction;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBudgetEstimatorTest {
+
+    // 16 chars + the 24-char "ID: .. | Text: " line = 40 chars = 10 input tokens at 4 chars/token
+    private static final String SHORT_TEXT = "coffee and cakes";
+
+    @Test
+    void packsUpToTheInputBudgetAndNoFurther() {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setTargetInputTokens(100);
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(config);
+
+        List<List<RawTransaction>> batches = estimator.pack(messages(25, SHORT_TEXT));
+
+        assertThat(batches).extracting(List::size).containsExactly(10, 10, 5);
+    }
+
+    @Test
+    void exactlyFullBatchIsNotSplit() {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setTargetInputTokens(100);
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(config);
+
+        assertThat(estimator.pack(messages(10, SHORT_TEXT))).hasSize(1);
+    }
+
+    @Test
+    void outputBudgetSplitsBeforeInputBudget() {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setTargetOutputTokens(100);
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(config);
+
+        // Short messages are expected to cost half the 40-token default: 20 output tokens each
+        assertThat(estimator.pack(messages(12, SHORT_TEXT))).extracting(List::size).containsExactly(5, 5, 2);
+    }
+
+    @Test
+    void oversizedMessageGetsItsOwnBatch() {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setTargetInputTokens(100);
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(config);
+
+        List<RawTransaction> rows = messages(3, SHORT_TEXT);
+        rows.get(1).setMessageText("x".repeat(1000));
+
+        assertThat(estimator.pack(rows)).extracting(List::size).containsExactly(1, 1, 1);
+    }
+
+    @Test
+    void maxTokensAddsHeadroomWithinBounds() {
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(new TokenBudgetConfig());
+
+        // 10 x 20 expected tokens, x1.5 headroom, +32 overhead
+        assertThat(estimator.maxTokensFor(messages(10, SHORT_TEXT))).isEqualTo(332);
+        assertThat(estimator.maxTokensFor(messages(1, SHORT_TEXT))).isEqualTo(256);
+        assertThat(estimator.maxTokensFor(messages(500, SHORT_TEXT))).isEqualTo(4096);
+    }
+
+    @Test
+    void promptTokenEstimateFollowsObservedUsage() {
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(new TokenBudgetConfig());
+        assertThat(estimator.estimatePromptTokens(400)).isEqualTo(100);
+
+        // 2 chars per token observed: the estimate moves a fifth of the way towards it
+        estimator.recordUsage(messages(10, SHORT_TEXT), 400, new OpenAIResponse.Usage(200, 100, 300),
+                "stop", Duration.ofSeconds(1));
+
+        assertThat(estimator.estimatePromptTokens(400)).isEqualTo(112);
+        assertThat(estimator.getAverageTokensPerMessage()).isEqualTo(30.0);
+    }
+
+    @Test
+    void claimGrowsWhenMessagesTurnOutCheaper() {
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(new TokenBudgetConfig());
+        // Output-bound: 1200-token latency budget / 40 tokens per item
+        assertThat(estimator.claimSize(1)).isEqualTo(30);
+
+        estimator.recordUsage(messages(10, SHORT_TEXT), 400, new OpenAIResponse.Usage(100, 100, 200),
+                "stop", Duration.ofSeconds(1));
+
+        assertThat(estimator.claimSize(1)).isEqualTo(40);
+        assertThat(estimator.claimSize(50)).isEqualTo(50);
+    }
+
+    @Test
+    void claimIsCappedByMaxClaimSize() {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setMaxClaimSize(20);
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator(config);
+
+        assertThat(estimator.claimSize(1)).isEqualTo(20);
+    }
+
+    private static List<RawTransaction> messages(int count, String text) {
+        return LongStream.rangeClosed(1, count)
+                .mapToObj(id -> RawTransaction.builder().id(id).messageText(text).build())
+                .toList();
+    }
+}